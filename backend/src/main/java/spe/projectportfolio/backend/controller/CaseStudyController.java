@@ -1,5 +1,12 @@
 package spe.projectportfolio.backend.controller;
 
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Encoding;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.media.SchemaProperty;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.Part;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -8,8 +15,16 @@ import org.springframework.web.bind.annotation.*;
 import spe.projectportfolio.backend.mapper.CaseStudyMapper;
 import spe.projectportfolio.backend.pojo.CaseStudy;
 import spe.projectportfolio.backend.pojo.CaseStudyUpload;
+import spe.projectportfolio.backend.pojo.KeysetPage;
+import spe.projectportfolio.backend.pojo.enums.CaseStudySort;
+import spe.projectportfolio.backend.pojo.enums.CaseStudyView;
+import spe.projectportfolio.backend.pojo.enums.SortDirection;
 import spe.projectportfolio.backend.service.CaseStudyService;
+import spe.projectportfolio.backend.service.CaseStudyUploadImages;
+import spe.projectportfolio.backend.service.CaseStudyUploadReader;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RequiredArgsConstructor
@@ -18,21 +33,54 @@ import java.util.List;
 public class CaseStudyController {
     private final CaseStudyMapper caseStudyMapper;
     private final CaseStudyService caseStudyService;
+    private final CaseStudyUploadReader caseStudyUploadReader;
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final int MAX_PAGE_SIZE = 100;
+    public static final String CASE_STUDY_PART = "caseStudy";
+    public static final String CLIENT_LOGO_PART = "clientLogo";
 
     @GetMapping(path = "/case-studies", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<CaseStudy>> getAllCaseStudiesByCondition(
+    public ResponseEntity<List<?>> getAllCaseStudiesByCondition(
             @RequestParam(name = "title", required = false) String title,
             @RequestParam(name = "client-name", required = false) String clientName,
             @RequestParam(name = "industry", required = false) String industry,
-            @RequestParam(name = "search", required = false) String search)
+            @RequestParam(name = "search", required = false) String search,
+            @RequestParam(name = "sort", defaultValue = "ID") CaseStudySort sort,
+            @RequestParam(name = "order", defaultValue = "ASC") SortDirection order,
+            @RequestParam(name = "limit", required = false) Integer limit,
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(name = "view", defaultValue = "SUMMARY") CaseStudyView view)
     {
-        List<CaseStudy> caseStudies;
-        if (search != null && !search.isEmpty()) {
-            caseStudies = caseStudyService.getCaseStudiesByGlobalSearch(search);
-        } else {
-            caseStudies = caseStudyService.getCaseStudiesByCondition(title, clientName, industry);
+        // by default only the fields shown in the list of case studies are returned (view=FULL returns every field)
+        //
+        // if a limit is given, only that many case studies are returned, and the cursor for the next page (if there is
+        // one) is returned in the X-Next-Cursor header, to be passed as "after" to get the next page
+        if (limit != null && (limit < 1 || limit > MAX_PAGE_SIZE)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        KeysetPage<?> page;
+        boolean isGlobalSearch = search != null && !search.isEmpty();
+        try {
+            if (view == CaseStudyView.FULL) {
+                page = isGlobalSearch
+                        ? caseStudyService.getCaseStudiesByGlobalSearch(search, sort, order, after, limit)
+                        : caseStudyService.getCaseStudiesByCondition(title, clientName, industry, sort, order, after, limit);
+            } else {
+                page = isGlobalSearch
+                        ? caseStudyService.getCaseStudySummariesByGlobalSearch(search, sort, order, after, limit)
+                        : caseStudyService.getCaseStudySummariesByCondition(title, clientName, industry, sort, order, after, limit);
+            }
+        } catch (IllegalArgumentException e) { // invalid cursor
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
         }
-        return ResponseEntity.ok(caseStudies);
+        return response.body(page.getItems());
     }
 
     @GetMapping(path = "/case-studies/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -44,23 +92,47 @@ public class CaseStudyController {
         return ResponseEntity.ok(foundCaseStudy);
     }
 
-    @PostMapping(path = "/case-studies", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<CaseStudy> createCaseStudy(@RequestBody CaseStudyUpload data) {
+    // case studies can be uploaded as JSON (with images as base64 data URIs), or as multipart/form-data where the case
+    // study JSON is in the "caseStudy" part and images are in binary parts (see readUpload)
+    //
+    // the request is read directly rather than as a request body, so its schema is given here for the API documentation
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(required = true, content = {
+            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = CaseStudyUpload.class)),
+            @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE,
+                    schemaProperties = {
+                            @SchemaProperty(name = CASE_STUDY_PART, schema = @Schema(implementation = CaseStudyUpload.class)),
+                            @SchemaProperty(name = CLIENT_LOGO_PART, schema = @Schema(type = "string", format = "binary"))
+                    },
+                    encoding = @Encoding(name = CASE_STUDY_PART, contentType = MediaType.APPLICATION_JSON_VALUE))
+    })
+    @PostMapping(path = "/case-studies", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.MULTIPART_FORM_DATA_VALUE})
+    public ResponseEntity<CaseStudy> createCaseStudy(HttpServletRequest request) {
         CaseStudy caseStudy;
-        try {
-            caseStudy = caseStudyService.addCaseStudy(data);
+        try (CaseStudyUploadImages images = new CaseStudyUploadImages()) {
+            CaseStudyUpload data = readUpload(request, images);
+            caseStudy = caseStudyService.addCaseStudy(data, images);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
         return ResponseEntity.ok(caseStudy);
     }
 
-    @PutMapping(path = "/case-studies", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<CaseStudy> updateCaseStudy(@RequestBody CaseStudyUpload data) {
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(required = true, content = {
+            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = CaseStudyUpload.class)),
+            @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE,
+                    schemaProperties = {
+                            @SchemaProperty(name = CASE_STUDY_PART, schema = @Schema(implementation = CaseStudyUpload.class)),
+                            @SchemaProperty(name = CLIENT_LOGO_PART, schema = @Schema(type = "string", format = "binary"))
+                    },
+                    encoding = @Encoding(name = CASE_STUDY_PART, contentType = MediaType.APPLICATION_JSON_VALUE))
+    })
+    @PutMapping(path = "/case-studies", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.MULTIPART_FORM_DATA_VALUE})
+    public ResponseEntity<CaseStudy> updateCaseStudy(HttpServletRequest request) {
         ResponseEntity<CaseStudy> badRequest = ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         CaseStudy updatedCaseStudy;
-        try {
-            updatedCaseStudy = caseStudyService.updateCaseStudy(data);
+        try (CaseStudyUploadImages images = new CaseStudyUploadImages()) {
+            CaseStudyUpload data = readUpload(request, images);
+            updatedCaseStudy = caseStudyService.updateCaseStudy(data, images);
             if (updatedCaseStudy == null) { // if null then the case study ID in the data could not be found, so it is bad request
                 return badRequest;
             }
@@ -87,4 +159,32 @@ public class CaseStudyController {
 
         return ResponseEntity.status(HttpStatus.OK).build();
     }
+
+    // read a case study upload, adding any images which are not base64 in the case study to images
+    //
+    // JSON uploads are read as they are streamed in (see CaseStudyUploadReader), so that base64 images in them are
+    // decoded without holding the whole upload in memory
+    //
+    // in multipart uploads, the client logo can be in the "clientLogo" part, and images in rich text fields can be in
+    // other parts, referred to by "cid:" followed by the part name (e.g. <img src="cid:image1">), so that they do not
+    // need to be encoded as base64
+    private CaseStudyUpload readUpload(HttpServletRequest request, CaseStudyUploadImages images) throws IOException, ServletException {
+        String contentType = request.getContentType();
+        if (contentType == null || !contentType.startsWith(MediaType.MULTIPART_FORM_DATA_VALUE)) {
+            return caseStudyUploadReader.read(request.getInputStream(), images);
+        }
+
+        Part caseStudyPart = null;
+        for (Part part : request.getParts()) {
+            switch (part.getName()) {
+                case CASE_STUDY_PART -> caseStudyPart = part;
+                case CLIENT_LOGO_PART -> images.setClientLogoPart(part);
+                default -> images.addPart(part);
+            }
+        }
+        if (caseStudyPart == null) throw new IllegalArgumentException("Missing case study part");
+        try (InputStream in = caseStudyPart.getInputStream()) {
+            return caseStudyUploadReader.read(in, images);
+        }
+    }
 }
@@ -1,52 +1,316 @@
 package spe.projectportfolio.backend.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import spe.projectportfolio.backend.mapper.ImageMapper;
 import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.ImageCacheStats;
+import spe.projectportfolio.backend.pojo.ImageGarbageCollectionStats;
+import spe.projectportfolio.backend.pojo.ImageOptimizationStats;
+import spe.projectportfolio.backend.pojo.ImageVariant;
 import spe.projectportfolio.backend.pojo.User;
 import spe.projectportfolio.backend.pojo.enums.ImageType;
+import spe.projectportfolio.backend.service.ImageCache;
+import spe.projectportfolio.backend.service.ImageGarbageCollector;
+import spe.projectportfolio.backend.service.ImageService;
+import spe.projectportfolio.backend.service.ImageVariantService;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 @RequiredArgsConstructor
 @RestController
 @RequestMapping("/api")
 public class ImageController {
     private final ImageMapper mapper;
+    private final ImageService imageService;
+    private final ImageCache imageCache;
+    private final ImageVariantService imageVariantService;
+    private final ImageGarbageCollector imageGarbageCollector;
 
+    public static final Duration IMMUTABLE_MAX_AGE = Duration.ofDays(365);
+    public static final int MAX_BATCH_SIZE = 100;
+    public static final int MAX_BATCH_IMAGE_SIZE = 64 * 1024;
+
+    // request attributes used to send a file using sendfile in Tomcat
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    // images are sent with their hash (or version, see ImageService.getVersionTag) as a strong ETag, so browsers can
+    // revalidate them without downloading them again (the data is only loaded if it has changed), and URLs with the
+    // hash as the "v" parameter (which always refer to the same data) can be cached without revalidating them at all
+    //
+    // the response is always written directly (rather than returned as a response entity), so that images can be
+    // copied to it a chunk at a time and the whole image is never in memory (except small images, which are cached in
+    // memory, see ImageCache)
+    //
+    // a single range of the image can be requested with a Range header (e.g. to resume a download), which is sent with
+    // status code 206 without reading the rest of the image, unless an If-Range header is given which doesn't match the
+    // current version of the image, in which case the whole image is sent
+    //
+    // if a width or height is given, a resized version of the image which fits within them is returned instead (see
+    // ImageVariantService), optionally converted to another format (with a quality for JPEG)
     @GetMapping(path = "/images/{id}", produces = {MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE})
-    public ResponseEntity<byte[]> getImageById(@PathVariable Long id) throws IOException {
-        // get requested image
-        Image foundImage = mapper.findById(id);
+    public void getImageById(
+            @PathVariable Long id,
+            @RequestParam(name = "v", required = false) String version,
+            @RequestParam(name = "w", required = false) Integer width,
+            @RequestParam(name = "h", required = false) Integer height,
+            @RequestParam(name = "format", required = false) ImageType format,
+            @RequestParam(name = "quality", required = false) Integer quality,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(name = HttpHeaders.RANGE, required = false) String rangeHeader,
+            @RequestHeader(name = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException
+    {
+        if (width != null || height != null || format != null || quality != null) {
+            writeImageVariant(id, version, width, height, format, quality, ifNoneMatch, response);
+            return;
+        }
+
+        // get requested image from the cache, or get it from the database without its data
+        ImageCache.CachedImage cachedImage = imageCache.get(id);
+        long cacheGeneration = imageCache.getGeneration();
+        Image metadata = cachedImage != null ? cachedImage.getMetadata() : mapper.findMetadataById(id);
 
         // if image cannot be found, return status code 404
-        if (foundImage == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        if (metadata == null) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        // images without a stored hash use their version instead (see ImageService.getVersionTag)
+        String hash = cachedImage != null ? cachedImage.getVersionTag() : ImageService.getVersionTag(metadata);
+
+        // if the browser already has this version of the image, return status code 304 without loading its data
+        if (matchesETag(ifNoneMatch, getETag(hash))) {
+            writeNotModified(response, getETag(hash), getCacheControl(hash, version));
+            return;
+        }
+
+        // get the requested range of the image (the whole image if there isn't one), returning status code 416 if it
+        // starts after the end of the image
+        long size = metadata.getSize();
+        long start = 0;
+        long end = size - 1;
+        HttpRange range = getRange(rangeHeader, ifRange, getETag(hash));
+        if (range != null) {
+            start = range.getRangeStart(size);
+            end = range.getRangeEnd(size);
+            if (start >= size) {
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                return;
+            }
+        }
+        long length = end - start + 1;
+
+        // write headers
+        response.setStatus(range != null ? HttpStatus.PARTIAL_CONTENT.value() : HttpStatus.OK.value());
+        response.setContentType(getMediaTypeFromImageType(metadata.getType()).toString());
+        response.setContentLengthLong(length);
+        if (range != null) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, getETag(hash));
+        response.setHeader(HttpHeaders.CACHE_CONTROL, getCacheControl(hash, version).getHeaderValue());
+
+        // send cached images from the cache, and cache small images which are not cached yet
+        if (cachedImage != null) {
+            cachedImage.writeTo(response.getOutputStream(), start, length);
+            return;
+        }
+        if (imageCache.canCache(metadata)) {
+            byte[] imageData = imageService.readData(metadata);
+            imageCache.put(metadata, hash, imageData, cacheGeneration);
+            response.getOutputStream().write(imageData, (int) start, (int) length);
+            return;
+        }
+
+        // images stored in files are sent by Tomcat using sendfile if it can, which copies the file to the socket
+        // without it passing through the application (files are named by their hash, so the file can't change)
+        Path file = imageService.getFile(metadata);
+        if (file != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, end + 1);
+            return;
+        }
+
+        // otherwise copy data to response
+        imageService.copyData(metadata, start, length, response.getOutputStream());
+    }
+
+    private void writeImageVariant(Long id, String version, Integer width, Integer height, ImageType format,
+                                   Integer quality, String ifNoneMatch, HttpServletResponse response) throws IOException
+    {
+        // get requested image without its data
+        Image metadata = mapper.findMetadataById(id);
+        if (metadata == null) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        // get the requested variant, returning status code 400 if its size or quality is not allowed
+        ImageVariant variant;
+        try {
+            variant = imageVariantService.getVariant(metadata, width, height, format, quality);
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+
+        // a variant is always made the same way from the same image, so its ETag is the hash (or version) of the image
+        // with the size, type and quality of the variant
+        String hash = ImageService.getVersionTag(metadata);
+        String eTag = getETag(hash + "-" + variant.getWidth() + "x" + variant.getHeight() + "-" + variant.getType() + "-" + variant.getQuality());
+        if (matchesETag(ifNoneMatch, eTag)) {
+            writeNotModified(response, eTag, getCacheControl(hash, version));
+            return;
+        }
+
+        // get variant data, returning status code 400 if the image can't be resized
+        byte[] variantData;
+        try {
+            variantData = imageVariantService.getData(metadata, variant);
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(getMediaTypeFromImageType(variant.getType()).toString());
+        response.setContentLength(variantData.length);
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, getCacheControl(hash, version).getHeaderValue());
+        response.getOutputStream().write(variantData);
+    }
+
+    // send status code 304 with the headers the image would have been sent with
+    private static void writeNotModified(HttpServletResponse response, String eTag, CacheControl cacheControl) {
+        response.setStatus(HttpStatus.NOT_MODIFIED.value());
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+    }
+
+    // get several small images at once (e.g. the client logos in the list of case studies), optionally resized (see
+    // getImageById), as a JSON object from image IDs to data URIs, so that they don't need a request each
+    //
+    // images which don't exist, can't be resized or are larger than MAX_BATCH_IMAGE_SIZE are left out, so that they can
+    // be requested one at a time instead
+    @GetMapping(path = "/images/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<Long, String>> getImagesByIds(
+            @RequestParam(name = "ids") List<Long> ids,
+            @RequestParam(name = "w", required = false) Integer width,
+            @RequestParam(name = "h", required = false) Integer height,
+            @RequestParam(name = "format", required = false) ImageType format,
+            @RequestParam(name = "quality", required = false) Integer quality,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ResponseEntity<Map<Long, String>> badRequest = ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        if (distinctIds.isEmpty() || distinctIds.size() > MAX_BATCH_SIZE) {
+            return badRequest;
         }
 
-        // get image data
-        byte[] imageData = foundImage.getData();
+        // get the requested variant of every image, returning status code 400 if its size or quality is not allowed
+        // (the data of images is only loaded with them if they are not being resized)
+        boolean isResized = width != null || height != null || format != null || quality != null;
+        List<Image> images = mapper.findByIds(distinctIds, isResized ? 0 : MAX_BATCH_IMAGE_SIZE);
+        Map<Long, ImageVariant> variants = new HashMap<>();
+        try {
+            if (isResized) {
+                for (Image image : images) {
+                    variants.put(image.getImageId(), imageVariantService.getVariant(image, width, height, format, quality));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return badRequest;
+        }
+
+        // the ETag is made from the hashes (or versions) of the images and the requested variant
+        String eTag = getBatchETag(images, width + "x" + height + "-" + format + "-" + quality);
+        if (matchesETag(ifNoneMatch, eTag)) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .build();
+        }
+
+        Map<Long, String> dataUris = new LinkedHashMap<>();
+        for (Image image : images) {
+            ImageVariant variant = variants.get(image.getImageId());
+            byte[] data;
+            try {
+                if (variant != null) {
+                    data = imageVariantService.getData(image, variant);
+                } else if (image.getSize() > MAX_BATCH_IMAGE_SIZE) {
+                    continue;
+                } else {
+                    data = image.getData() != null ? image.getData() : imageService.readData(image);
+                }
+            } catch (IllegalArgumentException | IOException e) {
+                // the image can't be resized, or changed while it was being read
+                continue;
+            }
+            if (data.length > MAX_BATCH_IMAGE_SIZE) continue;
 
-        // get image type as a MediaType
-        MediaType mediaType = getMediaTypeFromImageType(foundImage.getType());
+            MediaType mediaType = getMediaTypeFromImageType(variant != null ? variant.getType() : image.getType());
+            dataUris.put(image.getImageId(), "data:" + mediaType + ";base64," + Base64.getEncoder().encodeToString(data));
+        }
 
-        // return response entity
         return ResponseEntity
-                .status(HttpStatus.OK)
-                .contentType(mediaType)
-                .body(imageData);
+                .ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(dataUris);
+    }
+
+    @GetMapping(path = "/images/cache-stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ImageCacheStats> getImageCacheStats() {
+        return ResponseEntity.ok(imageCache.getStats());
+    }
+
+    // total sizes of images before and after they were optimized (see ImageOptimizer)
+    @GetMapping(path = "/images/optimization-stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ImageOptimizationStats> getImageOptimizationStats() {
+        return ResponseEntity.ok(mapper.getOptimizationStats());
+    }
+
+    // numbers of unreferenced images and unused image files deleted since the server started (see ImageGarbageCollector)
+    @GetMapping(path = "/images/gc-stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ImageGarbageCollectionStats> getImageGarbageCollectionStats() {
+        return ResponseEntity.ok(imageGarbageCollector.getStats());
     }
 
     @PostMapping(path = "/images", consumes = {MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE})
     public ResponseEntity<Long> createImage(@RequestBody byte[] imageData, @RequestHeader("Content-type") String contentType) {
         Image image = new Image(null, imageData, getImageTypeFromMediaType(contentType));
         try {
-            mapper.insert(image);
+            // if the same image is already stored, its ID is returned instead
+            imageService.store(image);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
@@ -58,10 +322,10 @@ public class ImageController {
         ResponseEntity<Void> badRequest = ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         Image image = new Image(id, imageData, getImageTypeFromMediaType(contentType));
         try {
-            if (mapper.findById(id) == null) {
+            if (mapper.findMetadataById(id) == null) {
                 return badRequest;
             }
-            mapper.update(image);
+            imageService.replace(image);
         } catch (Exception e) {
             return badRequest;
         }
@@ -71,14 +335,68 @@ public class ImageController {
     @DeleteMapping(path = "/images/{id}")
     public ResponseEntity<Void> deleteImage(@PathVariable Long id) {
         // check if image exists
-        if (mapper.findById(id) == null) {
+        if (mapper.findMetadataById(id) == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
-        // delete image
-        mapper.delete(id);
+        // remove a reference to the image, which deletes it if nothing else refers to it
+        imageService.release(id);
         return ResponseEntity.status(HttpStatus.OK).build();
     }
 
+    private static String getETag(String hash) {
+        return "\"" + hash + "\"";
+    }
+
+    // get the ETag of a batch of images
+    private static String getBatchETag(List<Image> images, String variant) {
+        StringBuilder key = new StringBuilder(variant);
+        for (Image image : images) {
+            key.append(',').append(image.getImageId()).append(':').append(ImageService.getVersionTag(image));
+        }
+        return getETag(ImageService.hash(key.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // get the range requested by a Range header, or null if the whole image should be sent (if there is no Range header,
+    // it can't be parsed or has several ranges, or an If-Range header doesn't match the current ETag using strong
+    // comparison, as If-Range requires)
+    private static HttpRange getRange(String rangeHeader, String ifRange, String eTag) {
+        if (rangeHeader == null || (ifRange != null && !ifRange.trim().equals(eTag))) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // images can only be seen by logged-in users, so they are only cached privately (by the browser), and images can be
+    // replaced, so they are revalidated unless the URL includes the hash of the image
+    private static CacheControl getCacheControl(String hash, String version) {
+        if (hash.equals(version)) {
+            return CacheControl.maxAge(IMMUTABLE_MAX_AGE).cachePrivate().immutable();
+        }
+        return CacheControl.noCache().cachePrivate();
+    }
+
+    // check if an If-None-Match header matches an ETag (using weak comparison, as If-None-Match requires)
+    private static boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // convert ImageType to MediaType
     public static MediaType getMediaTypeFromImageType(ImageType imageType) {
         MediaType mediaType;
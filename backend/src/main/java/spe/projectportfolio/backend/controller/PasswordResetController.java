@@ -11,12 +11,14 @@ import org.springframework.web.bind.annotation.RestController;
 import spe.projectportfolio.backend.mapper.UserMapper;
 import spe.projectportfolio.backend.pojo.PasswordResetDetails;
 import spe.projectportfolio.backend.pojo.User;
+import spe.projectportfolio.backend.security.PasswordHashingRejectedException;
 import spe.projectportfolio.backend.service.UserService;
 
 import java.util.HashMap;
 import java.util.Map;
 
 import static spe.projectportfolio.backend.controller.VerifyController.decreaseNumAttempts;
+import static spe.projectportfolio.backend.controller.VerifyController.restoreCode;
 
 @RequiredArgsConstructor
 @RestController
@@ -38,6 +40,8 @@ public class PasswordResetController {
 
         // Check if cached code equals the provided code
         if (cachedCode != null && cachedCode.equals(verCode)) {
+            String attempts = redisTemplate.opsForValue().get("attempts:" + email);
+
             // Delete the cached code
             redisTemplate.delete("verCode:" + email);
             redisTemplate.delete("attempts:" + email);
@@ -61,6 +65,12 @@ public class PasswordResetController {
                 response.put("status", 400);
                 response.put("message", "Invalid user details");
                 return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+            } catch (PasswordHashingRejectedException e) {
+                // put the code back, so that it can be used again when the server is less busy
+                restoreCode(email, cachedCode, attempts, redisTemplate);
+                response.put("status", 503);
+                response.put("message", "Server is busy, please try again");
+                return new ResponseEntity<>(response, HttpStatus.SERVICE_UNAVAILABLE);
             }
 
             // Success
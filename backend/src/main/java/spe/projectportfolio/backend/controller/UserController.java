@@ -6,8 +6,14 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import spe.projectportfolio.backend.mapper.UserMapper;
+import spe.projectportfolio.backend.pojo.KeysetPage;
+import spe.projectportfolio.backend.pojo.PasswordHashingStats;
 import spe.projectportfolio.backend.pojo.User;
 import spe.projectportfolio.backend.pojo.enums.Role;
+import spe.projectportfolio.backend.pojo.enums.SortDirection;
+import spe.projectportfolio.backend.pojo.enums.UserSort;
+import spe.projectportfolio.backend.security.BoundedPasswordEncoder;
+import spe.projectportfolio.backend.security.PasswordHashingRejectedException;
 import spe.projectportfolio.backend.service.UserService;
 
 import java.security.Principal;
@@ -21,11 +27,15 @@ import java.util.Map;
 public class UserController {
     private final UserMapper mapper;
     private final UserService userService;
+    private final BoundedPasswordEncoder passwordEncoder;
+
+    public static final int MAX_PAGE_SIZE = 100;
 
     @GetMapping(path = "/users/exists", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Map<String, Boolean>> checkEmailExists(@RequestParam(name = "email") String email) {
-        User foundUser = mapper.findByEmail(email);
-        boolean userExists = foundUser != null;
+        // anyone can check if an email exists, so emails which are definitely not registered are found without using
+        // the database
+        boolean userExists = userService.emailExists(email);
         return ResponseEntity.ok(Collections.singletonMap("exists", userExists));
     }
 
@@ -35,9 +45,10 @@ public class UserController {
         if (principal == null) {
             return ResponseEntity.ok(null);
         }
-        // if user is logged in, return their user details
+        // if user is logged in, return their user details (which are cached, so that this doesn't need the database)
         String email = principal.getName();
-        User user = mapper.findByEmail(email);
+        User user = userService.getUserByEmail(email);
+        if (user != null) user.setPassword(null); // remove password
         return ResponseEntity.ok(user);
     }
 
@@ -51,7 +62,7 @@ public class UserController {
         // if ID in provided user details does not match the logged-in user's actual ID, return with forbidden HTTP code,
         // to prevent the user from providing an ID that is not their own and modifying another user's details
         String email = principal.getName();
-        Long userId = mapper.findByEmail(email).getUserId();
+        Long userId = userService.getUserByEmail(email).getUserId();
         if (!user.getUserId().equals(userId)) {
             return forbidden;
         }
@@ -69,6 +80,8 @@ public class UserController {
                 return conflict;
             else
                 return badRequest;
+        } catch (PasswordHashingRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             return badRequest;
         }
@@ -84,15 +97,42 @@ public class UserController {
             @RequestParam(name = "last-name", required = false) String lastName,
             @RequestParam(name = "role", required = false) Role role,
             @RequestParam(name = "edit-permission", required = false) Boolean editPermission,
-            @RequestParam(name = "admin", required = false) Boolean admin) {
-        List<User> users = mapper.findByCondition(search, email, firstName, lastName, role, editPermission, admin);
-        users.forEach(user -> user.setPassword(null)); // remove all passwords
-        return ResponseEntity.ok(users);
+            @RequestParam(name = "admin", required = false) Boolean admin,
+            @RequestParam(name = "sort", defaultValue = "ID") UserSort sort,
+            @RequestParam(name = "order", defaultValue = "ASC") SortDirection order,
+            @RequestParam(name = "limit", required = false) Integer limit,
+            @RequestParam(name = "after", required = false) String after) {
+        // passwords are never selected for lists of users
+        //
+        // if a limit is given, the users are paginated in the same way as case studies (see
+        // CaseStudyController.getAllCaseStudiesByCondition)
+        if (limit != null && (limit < 1 || limit > MAX_PAGE_SIZE)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        KeysetPage<User> page;
+        try {
+            page = userService.getUsersByCondition(search, email, firstName, lastName, role, editPermission, admin, sort, order, after, limit);
+        } catch (IllegalArgumentException e) { // invalid cursor
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(CaseStudyController.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+
+    @GetMapping(path = "/users/password-hashing-stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PasswordHashingStats> getPasswordHashingStats() {
+        // queue depth and latency of password hashing, to see if logins are waiting for (or being rejected by) it
+        return ResponseEntity.ok(passwordEncoder.getStats());
     }
 
     @GetMapping(path = "/users/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<User> getUserById(@PathVariable Long id) {
-        User foundUser = mapper.findById(id);
+        User foundUser = userService.getUserById(id);
         if (foundUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         }
@@ -112,6 +152,8 @@ public class UserController {
                 return conflict;
             else
                 return badRequest;
+        } catch (PasswordHashingRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             return badRequest;
         }
@@ -130,6 +172,8 @@ public class UserController {
                 return conflict;
             else
                 return badRequest;
+        } catch (PasswordHashingRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             return badRequest;
         }
@@ -142,8 +186,8 @@ public class UserController {
         if (mapper.findById(id) == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
-        // delete user
-        mapper.delete(id);
+        // delete user (which removes them from the cache)
+        userService.deleteUser(id);
         return ResponseEntity.status(HttpStatus.OK).build();
     }
 }
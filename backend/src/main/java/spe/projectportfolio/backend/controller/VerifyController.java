@@ -107,4 +107,12 @@ public class VerifyController {
             }
         }
     }
+
+    public static void restoreCode(String email, String verCode, String numAttempts, RedisTemplate<String, String> redisTemplate) {
+        // Store the code and number of attempts remaining for another 5 minutes
+        redisTemplate.opsForValue().set("verCode:" + email, verCode, 5, TimeUnit.MINUTES);
+        if (numAttempts != null) {
+            redisTemplate.opsForValue().set("attempts:" + email, numAttempts, 5, TimeUnit.MINUTES);
+        }
+    }
 }
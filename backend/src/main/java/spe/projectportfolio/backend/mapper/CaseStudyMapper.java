@@ -2,6 +2,10 @@ package spe.projectportfolio.backend.mapper;
 
 import org.apache.ibatis.annotations.*;
 import spe.projectportfolio.backend.pojo.CaseStudy;
+import spe.projectportfolio.backend.pojo.CaseStudyCursor;
+import spe.projectportfolio.backend.pojo.CaseStudySummary;
+import spe.projectportfolio.backend.pojo.enums.CaseStudySort;
+import spe.projectportfolio.backend.pojo.enums.SortDirection;
 
 import java.util.List;
 
@@ -11,9 +15,48 @@ public interface CaseStudyMapper {
 
     CaseStudy findById(Long id);
 
-    List<CaseStudy> findByCondition(String title, String clientName, String industry);
+    // get case studies with only their ID and the fields searched by a global search (used to build the search index)
+    List<CaseStudy> findSearchFields();
 
-    List<CaseStudy> findByGlobalSearch(String search);
+    CaseStudy findSearchFieldsById(Long id);
+
+    // get case studies with only their ID and rich text fields, which have an image with just an ID as its src (rather
+    // than an image link) in any of their rich text fields
+    List<CaseStudy> findWithRichTextImageIds();
+
+    // get case studies with only their ID and the fields which can refer to images (the client logo and rich text
+    // fields), in order of ID
+    List<CaseStudy> findImageReferences(Long afterId, int limit);
+
+    // get the case studies (with the same fields as findImageReferences) which have the image as their client logo, or
+    // have link (the start of an image element linking to it) in any rich text field
+    List<CaseStudy> findReferencesToImage(Long imageId, String link);
+
+    // find case studies matching the condition, sorted by the given column, starting after the cursor (if not null),
+    // returning at most limit case studies (if not null)
+    List<CaseStudy> findByCondition(String title, String clientName, String industry, CaseStudySort sort, SortDirection direction, CaseStudyCursor after, Integer limit);
+
+    default List<CaseStudy> findByCondition(String title, String clientName, String industry) {
+        return findByCondition(title, clientName, industry, CaseStudySort.ID, SortDirection.ASC, null, null);
+    }
+
+    // find case studies with the given IDs, sorted and paginated in the same way as findByCondition
+    List<CaseStudy> findByIds(List<Long> ids, CaseStudySort sort, SortDirection direction, CaseStudyCursor after, Integer limit);
+
+    default List<CaseStudy> findByIds(List<Long> ids) {
+        return findByIds(ids, CaseStudySort.ID, SortDirection.ASC, null, null);
+    }
+
+    // same as findByCondition and findByIds, but only selecting the fields in CaseStudySummary
+    List<CaseStudySummary> findSummariesByCondition(String title, String clientName, String industry, CaseStudySort sort, SortDirection direction, CaseStudyCursor after, Integer limit);
+
+    List<CaseStudySummary> findSummariesByIds(List<Long> ids, CaseStudySort sort, SortDirection direction, CaseStudyCursor after, Integer limit);
+
+    // find case studies with any searched field containing the search text (ignoring case), sorted and paginated in the
+    // same way as findByCondition (only used while the search index is stale, as it scans the CaseStudy table)
+    List<CaseStudy> findByGlobalSearch(String search, CaseStudySort sort, SortDirection direction, CaseStudyCursor after, Integer limit);
+
+    List<CaseStudySummary> findSummariesByGlobalSearch(String search, CaseStudySort sort, SortDirection direction, CaseStudyCursor after, Integer limit);
 
     void insert(CaseStudy caseStudy);
 
@@ -2,8 +2,12 @@ package spe.projectportfolio.backend.mapper;
 
 import org.apache.ibatis.annotations.*;
 import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.ImageOptimizationStats;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface ImageMapper {
@@ -11,11 +15,69 @@ public interface ImageMapper {
 
     Image findById(Long id);
 
+    // get an image without its data
+    Image findMetadataById(Long id);
+
+    // get the images with the given IDs, with their data only if it is in the Image table and no larger than
+    // maxDataSize (the data of other images can be read using ImageService)
+    List<Image> findByIds(Collection<Long> ids, long maxDataSize);
+
+    // get an image without its data, locking it until the end of the transaction
+    Image findMetadataByIdForUpdate(Long id);
+
+    // get the IDs of images with their data in the Image table (rather than stored elsewhere), in order of ID
+    List<Long> findIdsWithData(Long afterId, int limit);
+
+    // count the images with their data stored at the given path
+    int countByPath(String path);
+
+    // get an image with only part of its data (starting at offset, from 0), or null if the image doesn't exist
+    Image findDataChunk(Long id, long offset, int length);
+
+    // get the ID of the image with the given hash, or null if there isn't one
+    Long findIdByHash(String hash);
+
+    // get the images with any of the given hashes, with only their ID, hashes, dimensions and placeholder
+    List<Image> findByHashes(Collection<String> hashes);
+
+    // get the images with the given IDs which have no references left, without their data
+    List<Image> findUnreferencedByIds(Collection<Long> ids);
+
+    // get the current time of the database, which images are timestamped with
+    LocalDateTime getCurrentTime();
+
+    // get the IDs of images which were last referenced (or stored) at or before the given time, in order of ID
+    List<Long> findIdsReferencedBefore(Long afterId, LocalDateTime time, int limit);
+
+    // get the images with the given IDs which were last referenced at or before the given time, without their data,
+    // locking them until the end of the transaction
+    List<Image> findReferencedBeforeByIdsForUpdate(Collection<Long> ids, LocalDateTime time);
+
+    ImageOptimizationStats getOptimizationStats();
+
     void insert(Image image);
 
     void update(Image image);
 
+    // replace the data of an image with an optimized version of it, keeping the hash and size of the original
+    void updateOptimized(Image image, String originalHash, Long originalSize);
+
+    // record that an image has been optimized without changing it (since it could not be made smaller)
+    void markOptimized(Long id);
+
+    // set the path of an image whose data has been moved out of the Image table, and remove its data from the table
+    void moveData(Long id, String path, Long size);
+
+    // images are shared by everything which refers to the same data, so each image counts its references (and records
+    // when it was last referenced, see ImageGarbageCollector)
+    void addReference(Long id);
+
+    // add or remove references to several images at once, where references maps image IDs to the number of references
+    void addReferences(@Param("references") Map<Long, Integer> references);
+
+    void removeReferences(@Param("references") Map<Long, Integer> references);
+
     void delete(Long id);
 
-    void deleteByIds(List<Long> ids);
+    void deleteByIds(Collection<Long> ids);
 }
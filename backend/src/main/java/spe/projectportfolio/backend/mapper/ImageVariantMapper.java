@@ -0,0 +1,17 @@
+package spe.projectportfolio.backend.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import spe.projectportfolio.backend.pojo.ImageVariant;
+
+@Mapper
+public interface ImageVariantMapper {
+    // get the variant with the same image ID, size, type and quality as the given one, or null if it hasn't been made
+    ImageVariant find(ImageVariant variant);
+
+    int countByImageId(Long imageId);
+
+    void insert(ImageVariant variant);
+
+    // delete the variants of an image, which must be done whenever the image is replaced
+    void deleteByImageId(Long imageId);
+}
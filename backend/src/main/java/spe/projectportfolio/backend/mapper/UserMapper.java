@@ -4,8 +4,12 @@ import org.apache.ibatis.annotations.*;
 
 import spe.projectportfolio.backend.pojo.CaseStudy;
 import spe.projectportfolio.backend.pojo.User;
+import spe.projectportfolio.backend.pojo.UserCursor;
 import spe.projectportfolio.backend.pojo.enums.Role;
+import spe.projectportfolio.backend.pojo.enums.SortDirection;
+import spe.projectportfolio.backend.pojo.enums.UserSort;
 
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
@@ -16,7 +20,20 @@ public interface UserMapper {
 
     User findByEmail(String email);
 
-    List<User> findByCondition(String search, String email, String firstName, String lastName, Role role, Boolean editPermission, Boolean admin);
+    // find users matching the condition, without their passwords, sorted by the given column, starting after the
+    // cursor (if not null), returning at most limit users (if not null)
+    //
+    // search is matched using LIKE, which has to scan the whole table, so searches are usually resolved to IDs using
+    // UserSearchIndex instead, and only the users with those IDs (if not null) are found
+    List<User> findByCondition(String search, Collection<Long> ids, String email, String firstName, String lastName, Role role, Boolean editPermission, Boolean admin,
+                               UserSort sort, SortDirection direction, UserCursor after, Integer limit);
+
+    default List<User> findByCondition(String search, String email, String firstName, String lastName, Role role, Boolean editPermission, Boolean admin) {
+        return findByCondition(search, null, email, firstName, lastName, role, editPermission, admin, UserSort.ID, SortDirection.ASC, null, null);
+    }
+
+    // find the ID, email, first name and last name of every user, to build UserSearchIndex
+    List<User> findSearchFields();
 
     void insert(User user);
 
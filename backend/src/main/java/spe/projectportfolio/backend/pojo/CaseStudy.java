@@ -20,6 +20,10 @@ public class CaseStudy {
     private String clientName;
     private String clientLink;
     private Long clientLogoId;
+    // dimensions and placeholder of the client logo (see Image), so that space can be made for it while it loads
+    private Integer clientLogoWidth;
+    private Integer clientLogoHeight;
+    private String clientLogoPlaceholder;
     private String industry;
     private String projectType;
     @JsonFormat(pattern = "yyyy-MM-dd")
@@ -0,0 +1,64 @@
+package spe.projectportfolio.backend.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import spe.projectportfolio.backend.pojo.enums.CaseStudySort;
+import spe.projectportfolio.backend.pojo.enums.SortDirection;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Base64;
+import java.util.Date;
+
+// position in a sorted list of case studies, used to fetch the page of case studies after it
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CaseStudyCursor {
+    private CaseStudySort sort;
+    private SortDirection direction;
+    private Long caseStudyId;
+    private String key; // value of the sort column (with nulls replaced the same way as in CaseStudyMapper.xml)
+
+    // create a cursor pointing at the given case study
+    public static CaseStudyCursor of(CaseStudy caseStudy, CaseStudySort sort, SortDirection direction) {
+        return of(caseStudy.getCaseStudyId(), caseStudy.getTitle(), caseStudy.getStartDate(), caseStudy.getEndDate(), sort, direction);
+    }
+
+    public static CaseStudyCursor of(CaseStudySummary caseStudy, CaseStudySort sort, SortDirection direction) {
+        return of(caseStudy.getCaseStudyId(), caseStudy.getTitle(), caseStudy.getStartDate(), caseStudy.getEndDate(), sort, direction);
+    }
+
+    private static CaseStudyCursor of(Long caseStudyId, String title, Date startDate, Date endDate, CaseStudySort sort, SortDirection direction) {
+        String key = switch (sort) {
+            case ID -> null;
+            case TITLE -> title == null ? "" : title;
+            case START_DATE -> formatDate(startDate);
+            case END_DATE -> formatDate(endDate);
+        };
+        return new CaseStudyCursor(sort, direction, caseStudyId, key);
+    }
+
+    // encode cursor as an opaque URL-safe string
+    public String encode() {
+        String value = sort + "|" + direction + "|" + caseStudyId + "|" + (key == null ? "" : key);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // decode a cursor created by encode(), throwing IllegalArgumentException if it is invalid
+    public static CaseStudyCursor decode(String cursor) {
+        String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] tokens = value.split("\\|", 4);
+        if (tokens.length != 4) throw new IllegalArgumentException("Invalid cursor");
+        CaseStudySort sort = CaseStudySort.valueOf(tokens[0]);
+        SortDirection direction = SortDirection.valueOf(tokens[1]);
+        Long caseStudyId = Long.parseLong(tokens[2]);
+        String key = sort == CaseStudySort.ID ? null : tokens[3];
+        return new CaseStudyCursor(sort, direction, caseStudyId, key);
+    }
+
+    private static String formatDate(Date date) {
+        return date == null ? "0001-01-01" : new SimpleDateFormat("yyyy-MM-dd").format(date);
+    }
+}
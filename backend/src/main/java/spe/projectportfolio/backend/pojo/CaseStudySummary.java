@@ -0,0 +1,31 @@
+package spe.projectportfolio.backend.pojo;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import spe.projectportfolio.backend.pojo.enums.ProjectStatus;
+
+import java.util.Date;
+
+// the fields of a case study shown on the home page cards (the full case study can be fetched by ID)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CaseStudySummary {
+    private Long caseStudyId;
+    private String title;
+    private ProjectStatus projectStatus;
+    private String clientName;
+    private Long clientLogoId;
+    private String clientLogoHash; // used to version the URL of the client logo, so that it can be cached
+    private Integer clientLogoWidth;
+    private Integer clientLogoHeight;
+    private String clientLogoPlaceholder;
+    private String industry;
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private Date startDate;
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private Date endDate;
+    private String summary;
+}
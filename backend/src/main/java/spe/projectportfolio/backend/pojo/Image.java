@@ -5,6 +5,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import spe.projectportfolio.backend.pojo.enums.ImageType;
 
+import java.nio.file.Path;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -12,4 +14,40 @@ public class Image {
     private Long imageId;
     private byte[] data;
     private ImageType type;
+
+    // hex SHA-256 hash of data, which is unique so that identical images are only stored once
+    private String hash;
+
+    // length of data in bytes, which is stored so that it is known before the data is read
+    private Long size;
+
+    // where the data is stored if it is not in the Image table (see ImageStorage)
+    private String path;
+
+    // hash and size of the data before it was optimized (see ImageOptimizer), the size of which is set once the image
+    // has been optimized (even if it could not be made any smaller)
+    private String originalHash;
+    private Long originalSize;
+
+    // dimensions of the image, and a tiny version of it as a data URI which can be shown while it loads, which are null
+    // if the image could not be read
+    private Integer width;
+    private Integer height;
+    private String placeholder;
+
+    // incremented whenever the data is changed, so that images without a hash still have a version (see
+    // ImageService.getVersionTag)
+    private Integer version;
+
+    // file holding the data of an image which is being stored, instead of data (e.g. an image decoded from an upload,
+    // see CaseStudyUploadImages), so that it is never read into memory as a whole
+    private Path file;
+
+    public Image(Long imageId, byte[] data, ImageType type) {
+        this(imageId, data, type, null, data == null ? null : (long) data.length, null, null, null, null, null, null, null, null);
+    }
+
+    public Image(Path file, ImageType type) {
+        this(null, null, type, null, null, null, null, null, null, null, null, null, file);
+    }
 }
@@ -0,0 +1,17 @@
+package spe.projectportfolio.backend.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageCacheStats {
+    private long hits;
+    private long misses;
+    private long evictions;
+    private int images;
+    private long bytes;
+    private long maxBytes;
+}
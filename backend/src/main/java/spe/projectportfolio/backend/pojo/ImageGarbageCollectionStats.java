@@ -0,0 +1,24 @@
+package spe.projectportfolio.backend.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// numbers of unreferenced images and unused image files deleted (see ImageGarbageCollector), and the bytes of data
+// they held
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageGarbageCollectionStats {
+    private long runs;
+    private long images;
+    private long files;
+    private long bytes;
+
+    public void add(ImageGarbageCollectionStats stats) {
+        runs += stats.runs;
+        images += stats.images;
+        files += stats.files;
+        bytes += stats.bytes;
+    }
+}
@@ -0,0 +1,15 @@
+package spe.projectportfolio.backend.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// total sizes of optimized images before and after they were optimized
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageOptimizationStats {
+    private long images;
+    private long originalBytes;
+    private long optimizedBytes;
+}
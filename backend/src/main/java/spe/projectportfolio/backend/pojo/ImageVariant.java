@@ -0,0 +1,19 @@
+package spe.projectportfolio.backend.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import spe.projectportfolio.backend.pojo.enums.ImageType;
+
+// a resized version of an image, which fits within the given width and height
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageVariant {
+    private Long imageId;
+    private int width;   // 0 if only the height is given
+    private int height;  // 0 if only the width is given
+    private ImageType type;
+    private int quality; // JPEG quality from 1 to 100, or 0 for PNG
+    private byte[] data;
+}
@@ -0,0 +1,22 @@
+package spe.projectportfolio.backend.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// current load of the password hashing threads, and how many passwords have been hashed or checked (or rejected) since
+// the server started and how long they took (see BoundedPasswordEncoder)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PasswordHashingStats {
+    private int threads;
+    private int activeThreads;
+    private int queueDepth;
+    private int queueCapacity;
+    private long completed;
+    private long rejected;
+    private double averageWaitMillis; // time spent in the queue
+    private double averageHashMillis; // time spent hashing
+    private double maxHashMillis;
+}
@@ -0,0 +1,17 @@
+package spe.projectportfolio.backend.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import spe.projectportfolio.backend.pojo.enums.ImageType;
+
+import java.nio.file.Path;
+
+// image decoded from an upload, stored in a temporary file until it is inserted into the database
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadedImage {
+    private ImageType type;
+    private Path file;
+}
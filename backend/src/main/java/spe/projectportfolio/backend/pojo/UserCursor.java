@@ -0,0 +1,50 @@
+package spe.projectportfolio.backend.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import spe.projectportfolio.backend.pojo.enums.SortDirection;
+import spe.projectportfolio.backend.pojo.enums.UserSort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// position in a sorted list of users, used to fetch the page of users after it (see CaseStudyCursor)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserCursor {
+    private UserSort sort;
+    private SortDirection direction;
+    private Long userId;
+    private String key; // value of the sort column
+
+    // create a cursor pointing at the given user
+    public static UserCursor of(User user, UserSort sort, SortDirection direction) {
+        String key = switch (sort) {
+            case ID -> null;
+            case EMAIL -> user.getEmail();
+            case FIRST_NAME -> user.getFirstName();
+            case LAST_NAME -> user.getLastName();
+        };
+        return new UserCursor(sort, direction, user.getUserId(), key);
+    }
+
+    // encode cursor as an opaque URL-safe string
+    public String encode() {
+        String value = sort + "|" + direction + "|" + userId + "|" + (key == null ? "" : key);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // decode a cursor created by encode(), throwing IllegalArgumentException if it is invalid
+    public static UserCursor decode(String cursor) {
+        String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] tokens = value.split("\\|", 4);
+        if (tokens.length != 4) throw new IllegalArgumentException("Invalid cursor");
+        UserSort sort = UserSort.valueOf(tokens[0]);
+        SortDirection direction = SortDirection.valueOf(tokens[1]);
+        Long userId = Long.parseLong(tokens[2]);
+        String key = sort == UserSort.ID ? null : tokens[3];
+        return new UserCursor(sort, direction, userId, key);
+    }
+}
@@ -0,0 +1,8 @@
+package spe.projectportfolio.backend.pojo.enums;
+
+public enum CaseStudySort {
+    ID,
+    TITLE,
+    START_DATE,
+    END_DATE
+}
@@ -0,0 +1,6 @@
+package spe.projectportfolio.backend.pojo.enums;
+
+public enum SortDirection {
+    ASC,
+    DESC
+}
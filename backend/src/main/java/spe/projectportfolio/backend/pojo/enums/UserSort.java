@@ -0,0 +1,8 @@
+package spe.projectportfolio.backend.pojo.enums;
+
+public enum UserSort {
+    ID,
+    EMAIL,
+    FIRST_NAME,
+    LAST_NAME
+}
@@ -0,0 +1,134 @@
+package spe.projectportfolio.backend.security;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import spe.projectportfolio.backend.pojo.PasswordHashingStats;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+// password encoder which hashes and checks passwords (which is slow on purpose) on a few dedicated threads, so that a
+// burst of logins, registrations or password changes can only use those threads' worth of CPU, and requests for
+// everything else are not slowed down by it
+//
+// requests still wait for their own password to be hashed, but if too many passwords are already waiting,
+// PasswordHashingRejectedException is thrown straight away (which is returned as 503) instead of waiting longer
+public class BoundedPasswordEncoder implements PasswordEncoder {
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+
+    // one permit for each thread and each place in the queue, taken when a password is submitted and given back once it
+    // has been hashed, so that a password is only rejected when every thread is busy and the queue is full (the
+    // executor's own queue can't do this, since a thread which is between passwords doesn't count as free)
+    private final Semaphore permits;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong totalHashNanos = new AtomicLong();
+    private final LongAccumulator maxHashNanos = new LongAccumulator(Math::max, 0);
+
+    // queueSize can be 0, in which case passwords are rejected whenever every thread is busy
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueSize) {
+        this.delegate = delegate;
+        this.queueCapacity = queueSize;
+        this.permits = new Semaphore(threads + queueSize);
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("password-hashing-");
+        threadFactory.setDaemon(true);
+        // the queue never has more than queueSize passwords, since they must have a permit first
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    // only compares the stored hash with the current strength, so it doesn't need to run on the hashing threads
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    public PasswordHashingStats getStats() {
+        long count = completed.get();
+        return new PasswordHashingStats(
+                executor.getMaximumPoolSize(),
+                executor.getActiveCount(),
+                executor.getQueue().size(),
+                queueCapacity,
+                count,
+                rejected.get(),
+                count == 0 ? 0 : toMillis(totalWaitNanos.get()) / count,
+                count == 0 ? 0 : toMillis(totalHashNanos.get()) / count,
+                toMillis(maxHashNanos.get()));
+    }
+
+    // called by Spring when the application is closed
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T run(Callable<T> task) {
+        if (!permits.tryAcquire()) {
+            rejected.incrementAndGet();
+            throw new PasswordHashingRejectedException("Too many passwords are waiting to be hashed");
+        }
+
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long started = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    long hashNanos = System.nanoTime() - started;
+                    completed.incrementAndGet();
+                    totalWaitNanos.addAndGet(started - submitted);
+                    totalHashNanos.addAndGet(hashNanos);
+                    maxHashNanos.accumulate(hashNanos);
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) { // shut down
+            permits.release();
+            rejected.incrementAndGet();
+            throw new PasswordHashingRejectedException("Password hashing has been shut down");
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // a password which hasn't started yet never runs, so its permit is given back here (otherwise it is given
+            // back when the password finishes)
+            if (executor.remove((Runnable) future)) permits.release();
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingRejectedException("Interrupted while waiting for password to be hashed");
+        } catch (ExecutionException e) {
+            // e.g. IllegalArgumentException if the password is null
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -18,6 +18,8 @@ import java.util.List;
 public class CustomUserDetailsService implements UserDetailsService {
     private final UserMapper userMapper;
 
+    // users are always loaded from the database (never from UserCache) when logging in, so that a changed password or
+    // permission, or a deleted user, takes effect straight away on every server
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
         User user = userMapper.findByEmail(email);
@@ -0,0 +1,13 @@
+package spe.projectportfolio.backend.security;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+// thrown when a password can't be hashed or checked because too many are already waiting (see BoundedPasswordEncoder)
+//
+// this is an AuthenticationServiceException so that logging in passes it to the failure handler, which returns 503
+// instead of 401, and every other request hashing a password returns 503 as well
+public class PasswordHashingRejectedException extends AuthenticationServiceException {
+    public PasswordHashingRejectedException(String message) {
+        super(message);
+    }
+}
@@ -2,6 +2,7 @@ package spe.projectportfolio.backend.security;
 
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -16,7 +17,6 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.HttpStatusEntryPoint;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -25,6 +25,7 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
+import spe.projectportfolio.backend.controller.CaseStudyController;
 
 import java.util.List;
 
@@ -74,6 +75,9 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.PUT,    "/api/users").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.DELETE, "/api/users/*").hasRole("ADMIN")
 
+                        // restrict image cache statistics to logged-in users with ADMIN role
+                        .requestMatchers(HttpMethod.GET, "/api/images/cache-stats", "/api/images/optimization-stats", "/api/images/gc-stats").hasRole("ADMIN")
+
                         // restrict certain case study API endpoints to logged-in users with EDITOR role
                         .requestMatchers(HttpMethod.POST,   "/api/case-studies", "/api/images").hasRole("EDITOR")
                         .requestMatchers(HttpMethod.PUT,    "/api/case-studies", "/api/images/*").hasRole("EDITOR")
@@ -95,7 +99,13 @@ public class SecurityConfig {
                             response.setStatus(HttpServletResponse.SC_OK);
                         }))
                         .failureHandler(((request, response, exception) -> {
-                            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                            // the password couldn't be checked because too many are waiting to be hashed (see
+                            // BoundedPasswordEncoder), so the user should try again rather than being told it's wrong
+                            if (exception instanceof PasswordHashingRejectedException) {
+                                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                            } else {
+                                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                            }
                         })))
 
                 .logout(logout -> logout
@@ -108,9 +118,11 @@ public class SecurityConfig {
         return http.build();
     }
 
+    // passwords are hashed and checked on their own threads instead of request threads (see BoundedPasswordEncoder)
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public BoundedPasswordEncoder passwordEncoder(@Value("${app.password-hashing.threads}") int threads,
+                                                  @Value("${app.password-hashing.queue-size}") int queueSize) {
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), threads, queueSize);
     }
 
     @Bean
@@ -136,6 +148,7 @@ public class SecurityConfig {
         config.addAllowedOrigin("http://localhost:3000");
         config.setAllowedHeaders(List.of("*"));
         config.setAllowedMethods(List.of("*"));
+        config.setExposedHeaders(List.of(CaseStudyController.NEXT_CURSOR_HEADER));
 
         // create source
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -0,0 +1,172 @@
+package spe.projectportfolio.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import spe.projectportfolio.backend.pojo.CaseStudy;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+// two-level read-through cache of case studies, with a size-bounded cache in memory in front of Redis
+//
+// when a case study is invalidated, every server is told to remove it from memory using Redis pub/sub (see
+// RedisSubscriptions), so a server which misses the message (e.g. while it can't reach Redis) keeps the old case study
+// until it expires
+//
+// case studies are only put in Redis if they haven't been invalidated since they started being loaded, using a
+// version which is incremented whenever they are, so that a request which loaded a case study before a change to it
+// was committed can't put the old case study back after it has been removed
+//
+// the returned case studies are shared between requests, so they must not be modified
+@Slf4j
+@Component
+public class CaseStudyCache implements MessageListener {
+    public static final String INVALIDATION_CHANNEL = "caseStudyInvalidations";
+
+    private static final String REDIS_KEY_PREFIX = "caseStudy:";
+    private static final String REDIS_VERSION_KEY_PREFIX = "caseStudyVersion:";
+
+    // KEYS = [case study key, version key], ARGV = [version when loading started, case study, expiry in ms]
+    private static final RedisScript<Long> PUT_IF_VERSION_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then return 0 end "
+                    + "redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]) return 1",
+            Long.class);
+
+    // KEYS = [case study key, version key], ARGV = [expiry in ms]
+    //
+    // the version is kept for as long as the case study could be, which is much longer than any load takes
+    private static final RedisScript<Long> EVICT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) local version = redis.call('INCR', KEYS[2]) "
+                    + "redis.call('PEXPIRE', KEYS[2], ARGV[1]) return version",
+            Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Cache<Long, CaseStudy> localCache;
+    private final Duration expireAfter;
+    private final boolean redisEnabled;
+
+    public CaseStudyCache(RedisTemplate<String, String> redisTemplate,
+                          ObjectMapper objectMapper,
+                          @Value("${app.case-study-cache.max-size}") long maxSize,
+                          @Value("${app.case-study-cache.expire-after}") Duration expireAfter,
+                          @Value("${app.case-study-cache.redis-enabled}") boolean redisEnabled,
+                          RedisSubscriptions redisSubscriptions) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.expireAfter = expireAfter;
+        this.redisEnabled = redisEnabled;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfter)
+                .build();
+        // case studies invalidated before subscribing may have been missed
+        if (redisEnabled) redisSubscriptions.subscribe(INVALIDATION_CHANNEL, this, localCache::invalidateAll);
+    }
+
+    // get a case study from the cache, or load it using the loader if it is not cached (returns null if the loader
+    // does)
+    //
+    // if several threads miss the same ID at the same time, only one of them loads it and the others wait for it
+    public CaseStudy get(Long id, Function<Long, CaseStudy> loader) {
+        return localCache.get(id, key -> {
+            CaseStudy caseStudy = getFromRedis(key);
+            if (caseStudy == null) {
+                String version = getRedisVersion(key);
+                caseStudy = loader.apply(key);
+                if (caseStudy != null && version != null) putInRedis(caseStudy, version);
+            }
+            return caseStudy;
+        });
+    }
+
+    // remove a case study from the cache, which must be done whenever it is modified
+    public void invalidate(Long id) {
+        evict(id);
+
+        // a request could load the old case study again before the transaction modifying it is committed, so it is
+        // removed again after the commit
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(id);
+                }
+            });
+        }
+    }
+
+    // remove a case study invalidated on another server (or this one) from memory
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            localCache.invalidate(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+        } catch (NumberFormatException e) {
+            log.warn("Invalid case study invalidation message: {}", e.getMessage());
+        }
+    }
+
+    private void evict(Long id) {
+        localCache.invalidate(id);
+        if (!redisEnabled) return;
+        try {
+            redisTemplate.execute(EVICT_SCRIPT, List.of(REDIS_KEY_PREFIX + id, REDIS_VERSION_KEY_PREFIX + id),
+                    String.valueOf(expireAfter.toMillis()));
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, id.toString());
+        } catch (DataAccessException e) {
+            log.warn("Could not remove case study {} from Redis: {}", id, e.getMessage());
+        }
+    }
+
+    // get the version of a case study in Redis, which is "0" if it has never been invalidated, or null if Redis can't
+    // be used (so the case study is not put in it)
+    private String getRedisVersion(Long id) {
+        if (!redisEnabled) return null;
+        try {
+            String version = redisTemplate.opsForValue().get(REDIS_VERSION_KEY_PREFIX + id);
+            return version == null ? "0" : version;
+        } catch (DataAccessException e) {
+            log.warn("Could not get the version of case study {} from Redis: {}", id, e.getMessage());
+            return null;
+        }
+    }
+
+    // Redis is only a cache, so if it is unavailable case studies are loaded from the database instead
+    private CaseStudy getFromRedis(Long id) {
+        if (!redisEnabled) return null;
+        try {
+            String json = redisTemplate.opsForValue().get(REDIS_KEY_PREFIX + id);
+            return json == null ? null : objectMapper.readValue(json, CaseStudy.class);
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("Could not get case study {} from Redis: {}", id, e.getMessage());
+            return null;
+        }
+    }
+
+    // put a case study in Redis, unless it has been invalidated since its version was found
+    private void putInRedis(CaseStudy caseStudy, String version) {
+        Long id = caseStudy.getCaseStudyId();
+        try {
+            String json = objectMapper.writeValueAsString(caseStudy);
+            redisTemplate.execute(PUT_IF_VERSION_SCRIPT, List.of(REDIS_KEY_PREFIX + id, REDIS_VERSION_KEY_PREFIX + id),
+                    version, json, String.valueOf(expireAfter.toMillis()));
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("Could not put case study {} in Redis: {}", id, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package spe.projectportfolio.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import spe.projectportfolio.backend.mapper.CaseStudyMapper;
+import spe.projectportfolio.backend.pojo.CaseStudy;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+// in-memory inverted index of all searchable case study fields, used to resolve global searches to case study IDs
+// without scanning the CaseStudy table
+//
+// rather than being rebuilt on a schedule, the index is updated with case studies changed on other servers, which are
+// found from the case study invalidations sent by CaseStudyCache, so it is only rebuilt (in the background) once it is
+// stale, e.g. after a transaction which changed it was rolled back, or when invalidations may have been missed (before
+// subscribing to them, or if the changed case study couldn't be loaded)
+//
+// case studies changed directly in the database are not sent to other servers, so the index must be rebuilt (see
+// rebuild) after changing them
+@Slf4j
+@Component
+public class CaseStudySearchIndex extends InMemorySearchIndex<CaseStudy> implements MessageListener {
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final CaseStudyMapper caseStudyMapper;
+
+    // term -> IDs of case studies containing it (sorted so that prefix lookups are a range scan)
+    private final NavigableMap<String, Set<Long>> postings = new TreeMap<>();
+
+    // case study ID -> terms it was indexed with (needed to remove its old postings when it changes)
+    private final Map<Long, Set<String>> termsByCaseStudyId = new HashMap<>();
+
+    public CaseStudySearchIndex(CaseStudyMapper caseStudyMapper,
+                                RedisSubscriptions redisSubscriptions,
+                                @Value("${app.case-study-cache.redis-enabled}") boolean redisEnabled) {
+        this.caseStudyMapper = caseStudyMapper;
+        if (redisEnabled) redisSubscriptions.subscribe(CaseStudyCache.INVALIDATION_CHANNEL, this, this::markStale);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        // if this fails the index is left stale, so that searches use the database until it is rebuilt
+        tryRebuild();
+    }
+
+    @Scheduled(initialDelayString = "${app.case-study-search-index.stale-check-interval}", fixedDelayString = "${app.case-study-search-index.stale-check-interval}")
+    public void rebuildIfStale() {
+        if (isStale()) tryRebuild();
+    }
+
+    // reload a case study invalidated on another server (or this one) into the index, or remove it if it has been
+    // deleted
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Long id;
+        try {
+            id = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            log.warn("Invalid case study invalidation message: {}", e.getMessage());
+            return;
+        }
+        try {
+            CaseStudy caseStudy = caseStudyMapper.findSearchFieldsById(id);
+            if (caseStudy == null) {
+                remove(id);
+            } else {
+                index(caseStudy);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not reload case study {} into the search index: {}", id, e.getMessage());
+            markStale();
+        }
+    }
+
+    // get the IDs of all case studies containing every term in the search (each term matches as a prefix of a word),
+    // or null if the index is stale, in which case the database must be searched instead (see UserSearchIndex)
+    public SortedSet<Long> search(String search) {
+        Set<String> searchTerms = tokenise(search);
+
+        lock.readLock().lock();
+        try {
+            if (isStale()) return null;
+            if (searchTerms.isEmpty()) return new TreeSet<>();
+
+            SortedSet<Long> result = null;
+            for (String term : searchTerms) {
+                SortedSet<Long> matches = new TreeSet<>();
+                postings.subMap(term, true, term + Character.MAX_VALUE, false).values().forEach(matches::addAll);
+                if (result == null) {
+                    result = matches;
+                } else {
+                    result.retainAll(matches);
+                }
+                if (result.isEmpty()) break;
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // split text into lowercase words with accents removed
+    static Set<String> tokenise(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) return terms;
+        String normalised = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        normalised = COMBINING_MARKS.matcher(normalised).replaceAll("").toLowerCase(Locale.ROOT);
+        for (String term : TOKEN_SEPARATOR.split(normalised)) {
+            if (!term.isEmpty()) terms.add(term);
+        }
+        return terms;
+    }
+
+    @Override
+    protected List<CaseStudy> loadAll() {
+        return caseStudyMapper.findSearchFields();
+    }
+
+    @Override
+    protected Long getId(CaseStudy caseStudy) {
+        return caseStudy.getCaseStudyId();
+    }
+
+    @Override
+    protected void addToIndex(CaseStudy caseStudy) {
+        Long id = caseStudy.getCaseStudyId();
+        Set<String> terms = new HashSet<>();
+        for (String field : Arrays.asList(caseStudy.getTitle(), caseStudy.getClientName(), caseStudy.getIndustry(), caseStudy.getProjectType(), caseStudy.getSummary(), caseStudy.getTeamMembers(), caseStudy.getAdvanceLink())) {
+            terms.addAll(tokenise(field));
+        }
+        for (String field : Arrays.asList(caseStudy.getProblemDescription(), caseStudy.getSolutionDescription(), caseStudy.getOutcomes(), caseStudy.getToolsUsed(), caseStudy.getProjectLearnings())) {
+            // only index the visible text of rich text fields, not the HTML tags and attributes
+            if (field != null) terms.addAll(tokenise(Jsoup.parse(field).text()));
+        }
+        for (String term : terms) {
+            postings.computeIfAbsent(term, t -> new HashSet<>()).add(id);
+        }
+        termsByCaseStudyId.put(id, terms);
+    }
+
+    @Override
+    protected void removeFromIndex(Long caseStudyId) {
+        Set<String> terms = termsByCaseStudyId.remove(caseStudyId);
+        if (terms == null) return;
+        for (String term : terms) {
+            Set<Long> ids = postings.get(term);
+            ids.remove(caseStudyId);
+            if (ids.isEmpty()) postings.remove(term);
+        }
+    }
+
+    @Override
+    protected void clearIndex() {
+        postings.clear();
+        termsByCaseStudyId.clear();
+    }
+}
@@ -4,130 +4,265 @@ import lombok.RequiredArgsConstructor;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.safety.Cleaner;
 import org.jsoup.safety.Safelist;
-import org.jsoup.select.Elements;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import spe.projectportfolio.backend.mapper.CaseStudyMapper;
-import spe.projectportfolio.backend.mapper.ImageMapper;
-import spe.projectportfolio.backend.pojo.CaseStudy;
-import spe.projectportfolio.backend.pojo.CaseStudyUpload;
-import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.*;
+import spe.projectportfolio.backend.pojo.enums.CaseStudySort;
 import spe.projectportfolio.backend.pojo.enums.ImageType;
+import spe.projectportfolio.backend.pojo.enums.SortDirection;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @RequiredArgsConstructor
 @Service
 public class CaseStudyService {
+    // path of the images in rich text fields, which is stored relative to the API URL so that rich text fields can be
+    // returned exactly as they are stored
+    public static final String IMAGE_PATH = "/api/images/";
+
+    // image links sent back when updating a case study, which may include the API URL, or be just the ID of the image
+    // (as case studies stored before image links were stored had)
+    private static final Pattern IMAGE_LINK = Pattern.compile("^(?:(?:https?://.+)?/api/images/)?(\\d+)$");
+
+    // image src stored in rich text fields (case studies stored before image links were stored just have the ID)
+    private static final Pattern STORED_IMAGE_SRC = Pattern.compile("^(?:/api/images/)?(\\d+)$");
+
+    // images in stored rich text fields, which were serialised by Jsoup with src as their first attribute (followed by
+    // the dimensions and placeholder of the image, if it could be read)
+    private static final Pattern STORED_IMAGE = Pattern.compile("<img src=\"([^\"]*)\"[^>]*>");
+
+    // rich text fields may only contain basic formatting and images, and the cleaner (and the safelist it uses) is
+    // never modified so that it can be shared between requests
+    private static final Cleaner RICH_TEXT_CLEANER = new Cleaner(Safelist.basic().addTags("img").addAttributes("img", "src"));
+
     private final CaseStudyMapper caseStudyMapper;
-    private final ImageMapper imageMapper;
+    private final ImageService imageService;
+    private final CaseStudySearchIndex caseStudySearchIndex;
+    private final CaseStudyCache caseStudyCache;
+
+    public KeysetPage<CaseStudySummary> getCaseStudySummariesByGlobalSearch(String search, CaseStudySort sort, SortDirection direction, String after, Integer limit) {
+        CaseStudyCursor cursor = decodeCursor(after, sort, direction);
+
+        // resolve the matching IDs from the search index, then only fetch those case studies (or search the database if
+        // the index is stale)
+        Set<Long> ids = caseStudySearchIndex.search(search);
+        List<CaseStudySummary> caseStudies;
+        if (ids == null) {
+            caseStudies = caseStudyMapper.findSummariesByGlobalSearch(search, sort, direction, cursor, fetchLimit(limit));
+        } else if (ids.isEmpty()) {
+            return new KeysetPage<>(new ArrayList<>(), null);
+        } else {
+            caseStudies = caseStudyMapper.findSummariesByIds(new ArrayList<>(ids), sort, direction, cursor, fetchLimit(limit));
+        }
+        return getPage(caseStudies, limit, caseStudy -> CaseStudyCursor.of(caseStudy, sort, direction));
+    }
 
-    @Value("${app.api-url}")
-    private String url;
+    public KeysetPage<CaseStudySummary> getCaseStudySummariesByCondition(String title, String clientName, String industry, CaseStudySort sort, SortDirection direction, String after, Integer limit) {
+        CaseStudyCursor cursor = decodeCursor(after, sort, direction);
+        List<CaseStudySummary> caseStudies = caseStudyMapper.findSummariesByCondition(title, clientName, industry, sort, direction, cursor, fetchLimit(limit));
+        return getPage(caseStudies, limit, caseStudy -> CaseStudyCursor.of(caseStudy, sort, direction));
+    }
 
-    public List<CaseStudy> getCaseStudiesByGlobalSearch(String search) {
-        List<CaseStudy> caseStudies = caseStudyMapper.findByGlobalSearch(search);
-        caseStudies.forEach(this::convertRichTextFieldImageIds);
-        return caseStudies;
+    public KeysetPage<CaseStudy> getCaseStudiesByGlobalSearch(String search, CaseStudySort sort, SortDirection direction, String after, Integer limit) {
+        CaseStudyCursor cursor = decodeCursor(after, sort, direction);
+
+        // resolve the matching IDs from the search index, then only fetch those case studies (or search the database if
+        // the index is stale)
+        Set<Long> ids = caseStudySearchIndex.search(search);
+        List<CaseStudy> caseStudies;
+        if (ids == null) {
+            caseStudies = caseStudyMapper.findByGlobalSearch(search, sort, direction, cursor, fetchLimit(limit));
+        } else if (ids.isEmpty()) {
+            return new KeysetPage<>(new ArrayList<>(), null);
+        } else {
+            caseStudies = caseStudyMapper.findByIds(new ArrayList<>(ids), sort, direction, cursor, fetchLimit(limit));
+        }
+        return getPage(caseStudies, limit, caseStudy -> CaseStudyCursor.of(caseStudy, sort, direction));
     }
 
-    public List<CaseStudy> getCaseStudiesByCondition(String title, String clientName, String industry) {
-        List<CaseStudy> caseStudies = caseStudyMapper.findByCondition(title, clientName, industry);
-        caseStudies.forEach(this::convertRichTextFieldImageIds);
-        return caseStudies;
+    public KeysetPage<CaseStudy> getCaseStudiesByCondition(String title, String clientName, String industry, CaseStudySort sort, SortDirection direction, String after, Integer limit) {
+        CaseStudyCursor cursor = decodeCursor(after, sort, direction);
+        List<CaseStudy> caseStudies = caseStudyMapper.findByCondition(title, clientName, industry, sort, direction, cursor, fetchLimit(limit));
+        return getPage(caseStudies, limit, caseStudy -> CaseStudyCursor.of(caseStudy, sort, direction));
     }
 
     public CaseStudy getCaseStudyById(Long id) {
-        CaseStudy foundCaseStudy = caseStudyMapper.findById(id);
-        if (foundCaseStudy != null) convertRichTextFieldImageIds(foundCaseStudy);
-        return foundCaseStudy;
+        return caseStudyCache.get(id, caseStudyMapper::findById);
     }
 
+    // add a case study, where images which were decoded while the upload was read are in images
     @Transactional
-    public CaseStudy addCaseStudy(CaseStudyUpload data) {
-        String clientLogoBase64 = data.getClientLogoBase64();
+    public CaseStudy addCaseStudy(CaseStudyUpload data, CaseStudyUploadImages images) {
         Long imageId = null;
 
         // check if we are uploading an image, and insert it into the database if we are
-        if ((clientLogoBase64 != null) && !clientLogoBase64.isEmpty()) {
-            // insert image into database
-            Image image = getImageFromBase64(clientLogoBase64);
-            imageMapper.insert(image);
-
-            // set image ID
-            imageId = image.getImageId();
+        Image image = getClientLogo(data, images);
+        if (image != null) {
+            // insert image into database (or refer to the same image if it is already there), and set image ID
+            imageId = imageService.store(image);
         }
 
-        sanitiseRichTextFields(data);
-        insertImagesFoundInRichTextFields(data);
+        // sanitise rich text fields, and insert any images in them (which must all be base64)
+        processRichTextFields(data, images, null);
 
         // insert case study into database
         CaseStudy caseStudy = getCaseStudyFromUploadData(data, imageId);
         caseStudyMapper.insert(caseStudy);
+        caseStudySearchIndex.index(caseStudy);
+        caseStudyCache.invalidate(caseStudy.getCaseStudyId());
 
         return caseStudy;
     }
 
+    // update a case study, where images which were decoded while the upload was read are in images
     @Transactional
-    public CaseStudy updateCaseStudy(CaseStudyUpload data) {
+    public CaseStudy updateCaseStudy(CaseStudyUpload data, CaseStudyUploadImages images) {
         CaseStudy currentCaseStudyData = caseStudyMapper.findById(data.getCaseStudyId());
 
         // case study with provided ID does not exist, so cannot update case study so return null
         if (currentCaseStudyData == null) return null;
 
-        String clientLogoBase64 = data.getClientLogoBase64();
-
         // get ID of current image
         Long imageId = currentCaseStudyData.getClientLogoId();
 
-        // check if we are uploading a new image, and replace the current one in the database if we are
-        if ((clientLogoBase64 != null) && !clientLogoBase64.isEmpty()) {
-            // update image in database
-            Image image = getImageFromBase64(clientLogoBase64);
-
-            // we need to check if there was previously a logo we need to update, or if we need to insert a new one
-            if (imageId == null) {
-                // insert a new image and set image ID for case study
-                imageMapper.insert(image);
-                imageId = image.getImageId();
-            } else {
-                // update existing image (case study already has correct ID so no need to update it, so set to null)
-                image.setImageId(imageId);
-                imageMapper.update(image);
-                imageId = null;
-            }
+        // check if we are uploading a new image, and replace the current one if we are (the current image may be
+        // shared with other case studies, so it can't be updated, instead the new image is stored and the current one
+        // is released once the case study no longer refers to it)
+        Image image = getClientLogo(data, images);
+        Long replacedImageId = null;
+        if (image != null) {
+            replacedImageId = imageId;
+            imageId = imageService.store(image);
         }
 
-        sanitiseRichTextFields(data);
-        updateImagesInRichTextFields(data, currentCaseStudyData);
-
-        // update case study in database
+        // sanitise rich text fields and insert any new images in them
+        Map<Long, Integer> linkedImages = new HashMap<>();
+        processRichTextFields(data, images, linkedImages);
+
+        // compare the number of links to each image with the number in the fields being replaced, so that images which
+        // are still linked to keep their references, extra links add references, and links which were removed release
+        // their images (with every image added or released at once)
+        Map<Long, Integer> addedImages = new HashMap<>();
+        Map<Long, Integer> releasedImages = countStoredImages(getReplacedRichTextFields(currentCaseStudyData, data));
+        linkedImages.forEach((linkedImageId, count) -> {
+            int difference = count - releasedImages.getOrDefault(linkedImageId, 0);
+            if (difference > 0) addedImages.put(linkedImageId, difference);
+            if (difference >= 0) releasedImages.remove(linkedImageId);
+            else releasedImages.put(linkedImageId, -difference);
+        });
+        imageService.addReferences(addedImages);
+
+        // update case study in database, and then release the images it no longer refers to
         CaseStudy caseStudy = getCaseStudyFromUploadData(data, imageId);
         caseStudyMapper.update(caseStudy);
+        if (replacedImageId != null) releasedImages.merge(replacedImageId, 1, Integer::sum);
+        imageService.releaseAll(releasedImages);
 
         CaseStudy updatedCaseStudy = caseStudyMapper.findById(data.getCaseStudyId());
+        caseStudySearchIndex.index(updatedCaseStudy);
+        caseStudyCache.invalidate(updatedCaseStudy.getCaseStudyId());
         return updatedCaseStudy;
     }
 
+    // the dimensions and placeholder of an image are stored in the rich text fields linking to it, and cached with the
+    // case studies which have it as their client logo, so they are updated when its data is replaced (e.g. when
+    // ImageOptimizer scales it down)
+    //
+    // this runs in the transaction replacing the image (if there is one), so that the case studies are never updated
+    // without it
+    @EventListener
+    public void onImageReplaced(ImageReplacedEvent event) {
+        Long imageId = event.getImageId();
+        List<Image> images = imageService.getMetadata(List.of(imageId));
+        if (images.isEmpty()) return;
+        Image metadata = images.get(0);
+
+        String link = "<img src=\"" + IMAGE_PATH + imageId + "\"";
+        for (CaseStudy caseStudy : caseStudyMapper.findReferencesToImage(imageId, link)) {
+            // only the updated fields are updated, so that nothing else is overwritten if it is being edited
+            CaseStudy update = new CaseStudy();
+            update.setCaseStudyId(caseStudy.getCaseStudyId());
+            update.setProblemDescription(updateImageAttributes(caseStudy.getProblemDescription(), metadata));
+            update.setSolutionDescription(updateImageAttributes(caseStudy.getSolutionDescription(), metadata));
+            update.setOutcomes(updateImageAttributes(caseStudy.getOutcomes(), metadata));
+            update.setToolsUsed(updateImageAttributes(caseStudy.getToolsUsed(), metadata));
+            update.setProjectLearnings(updateImageAttributes(caseStudy.getProjectLearnings(), metadata));
+            if (update.getProblemDescription() != null || update.getSolutionDescription() != null || update.getOutcomes() != null
+                    || update.getToolsUsed() != null || update.getProjectLearnings() != null) {
+                caseStudyMapper.update(update);
+            }
+            caseStudyCache.invalidate(caseStudy.getCaseStudyId());
+        }
+    }
+
     @Transactional
     public void deleteCaseStudy(Long id) {
         CaseStudy caseStudy = caseStudyMapper.findById(id);
 
         // delete case study
         caseStudyMapper.delete(id);
+        caseStudySearchIndex.remove(id);
+        caseStudyCache.invalidate(id);
 
-        deleteImagesFoundInRichTextFields(caseStudy);
-
-        // if case study has a client logo, delete it
+        // release images found in rich text fields and the client logo (which deletes them if no other case study
+        // refers to them)
+        Map<Long, Integer> releasedImages = countStoredImages(getRichTextFields(caseStudy));
         Long clientLogoId = caseStudy.getClientLogoId();
         if (clientLogoId != null) {
-            imageMapper.delete(clientLogoId);
+            releasedImages.merge(clientLogoId, 1, Integer::sum);
+        }
+        imageService.releaseAll(releasedImages);
+    }
+
+    // decode the cursor of the previous page, throwing IllegalArgumentException if it is invalid or was created for a
+    // different sort order
+    private static CaseStudyCursor decodeCursor(String after, CaseStudySort sort, SortDirection direction) {
+        if (after == null || after.isEmpty()) return null;
+        CaseStudyCursor cursor = CaseStudyCursor.decode(after);
+        if (cursor.getSort() != sort || cursor.getDirection() != direction) {
+            throw new IllegalArgumentException("Cursor does not match sort order");
         }
+        return cursor;
+    }
+
+    // one more than the limit is fetched to find out if there is another page after this one
+    private static Integer fetchLimit(Integer limit) {
+        return limit == null ? null : limit + 1;
+    }
+
+    // convert items fetched with fetchLimit into a page
+    private static <T> KeysetPage<T> getPage(List<T> items, Integer limit, Function<T, CaseStudyCursor> cursorOf) {
+        String nextCursor = null;
+        if (limit != null && items.size() > limit) {
+            items = new ArrayList<>(items.subList(0, limit));
+            nextCursor = cursorOf.apply(items.get(limit - 1)).encode();
+        }
+        return new KeysetPage<>(items, nextCursor);
+    }
+
+    // get the new client logo in an upload (either already decoded or as base64), or null if there isn't one
+    private static Image getClientLogo(CaseStudyUpload data, CaseStudyUploadImages images) {
+        Image image = images.getClientLogoImage();
+        if (image != null) return image;
+
+        String clientLogoBase64 = data.getClientLogoBase64();
+        if ((clientLogoBase64 != null) && !clientLogoBase64.isEmpty()) return getImageFromBase64(clientLogoBase64);
+        return null;
     }
 
     public static Image getImageFromBase64(String base64) {
@@ -150,6 +285,9 @@ public class CaseStudyService {
                 data.getClientName(),
                 data.getClientLink(),
                 imageId,
+                null, // the dimensions and placeholder of the client logo are only returned, never stored
+                null,
+                null,
                 data.getIndustry(),
                 data.getProjectType(),
                 data.getStartDate(),
@@ -174,197 +312,137 @@ public class CaseStudyService {
         }
     }
 
-    // convert all image IDs into image links inside all rich text fields of case study
-    private void convertRichTextFieldImageIds(CaseStudy caseStudy) {
-        List<String> richTextFields = Arrays.asList(caseStudy.getProblemDescription(), caseStudy.getSolutionDescription(), caseStudy.getOutcomes(), caseStudy.getToolsUsed(), caseStudy.getProjectLearnings());
-        List<String> newRichTextFields = new ArrayList<>();
+    // get the ID of an image from its src stored in a rich text field, throwing IllegalArgumentException if it is not
+    // a stored image
+    public static Long getStoredImageId(String src) {
+        Matcher matcher = STORED_IMAGE_SRC.matcher(src);
+        if (!matcher.matches()) throw new IllegalArgumentException("Invalid image src: " + src);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    // count the links to each image stored in the given rich text fields (which were serialised by Jsoup, so they can
+    // be found without parsing the HTML)
+    static Map<Long, Integer> countStoredImages(List<String> richTextFields) {
+        Map<Long, Integer> imageCounts = new HashMap<>();
         for (String field : richTextFields) {
-            if (field == null) {
-                newRichTextFields.add(null);
-                continue;
-            }
-            Document document = Jsoup.parse(field);
-            Elements imageElements = document.select("img"); // get all image elements
-            for (Element imageElement : imageElements) {
-                // extract ID from image element
-                String id = imageElement.attr("src");
-
-                // create image link
-                String link = url + "/api/images/" + id;
-
-                // replace ID in field with image link
-                Element newImageElement = new Element("img");
-                newImageElement.attr("src", link);
-                imageElement.replaceWith(newImageElement);
+            if (field == null) continue;
+            Matcher matcher = STORED_IMAGE.matcher(field);
+            while (matcher.find()) {
+                imageCounts.merge(getStoredImageId(matcher.group(1)), 1, Integer::sum);
             }
-            String newHtml = document.select("body").html();
-            newRichTextFields.add(newHtml);
         }
+        return imageCounts;
+    }
 
-        // replace rich text fields in data with updated ones
-        caseStudy.setProblemDescription(newRichTextFields.get(0));
-        caseStudy.setSolutionDescription(newRichTextFields.get(1));
-        caseStudy.setOutcomes(newRichTextFields.get(2));
-        caseStudy.setToolsUsed(newRichTextFields.get(3));
-        caseStudy.setProjectLearnings(newRichTextFields.get(4));
+    static List<String> getRichTextFields(CaseStudy caseStudy) {
+        return Arrays.asList(caseStudy.getProblemDescription(), caseStudy.getSolutionDescription(), caseStudy.getOutcomes(), caseStudy.getToolsUsed(), caseStudy.getProjectLearnings());
     }
 
-    // insert into database any images found in rich text fields, and replace base64 with image ID
-    private void insertImagesFoundInRichTextFields(CaseStudyUpload data) {
-        List<String> richTextFields = Arrays.asList(data.getProblemDescription(), data.getSolutionDescription(), data.getOutcomes(), data.getToolsUsed(), data.getProjectLearnings());
-        List<String> newRichTextFields = new ArrayList<>();
-        for (String field : richTextFields) {
-            if (field == null) {
-                newRichTextFields.add(null);
-                continue;
-            }
-            Document document = Jsoup.parse(field);
-            Elements imageElements = document.select("img"); // get all image elements
-            for (Element imageElement : imageElements) {
-                // extract base64 from image element
-                String imgBase64 = imageElement.attr("src");
-
-                // decode base64 and insert image into database
-                Image image = getImageFromBase64(imgBase64);
-                imageMapper.insert(image);
-
-                // get ID of image
-                Long id = image.getImageId();
-
-                // replace base64 in field with image ID
-                Element newImageElement = new Element("img");
-                newImageElement.attr("src", id.toString());
-                imageElement.replaceWith(newImageElement);
-            }
-            String newHtml = document.select("body").html();
-            newRichTextFields.add(newHtml);
+    // get the current rich text fields of a case study which are being replaced by data (fields which are null in data
+    // are not updated, so the images in them are kept)
+    private static List<String> getReplacedRichTextFields(CaseStudy currentData, CaseStudyUpload data) {
+        List<String> currentFields = getRichTextFields(currentData);
+        List<String> newFields = Arrays.asList(data.getProblemDescription(), data.getSolutionDescription(), data.getOutcomes(), data.getToolsUsed(), data.getProjectLearnings());
+        List<String> replacedFields = new ArrayList<>();
+        for (int i = 0; i < currentFields.size(); i++) {
+            if (newFields.get(i) != null) replacedFields.add(currentFields.get(i));
         }
-
-        // replace rich text fields in data with updated ones
-        data.setProblemDescription(newRichTextFields.get(0));
-        data.setSolutionDescription(newRichTextFields.get(1));
-        data.setOutcomes(newRichTextFields.get(2));
-        data.setToolsUsed(newRichTextFields.get(3));
-        data.setProjectLearnings(newRichTextFields.get(4));
+        return replacedFields;
     }
 
-    // for all images in all rich text fields in data, if new base64 found then it is inserted into database and
-    // replaced with a link, if there is an image ID in currentData that isn't in data, then the corresponding image
-    // is deleted from the database
-    private void updateImagesInRichTextFields(CaseStudyUpload data, CaseStudy currentData) {
-        // get all image IDs from rich text fields from current case study data
-        List<String> richTextFields = Arrays.asList(currentData.getProblemDescription(), currentData.getSolutionDescription(), currentData.getOutcomes(), currentData.getToolsUsed(), currentData.getProjectLearnings());
-        List<Long> currentImageIDs = new ArrayList<>();
-        for (String field : richTextFields) {
-            if (field == null) continue;
-            Document document = Jsoup.parse(field);
-            Elements imageElements = document.select("img"); // get all image elements
-            for (Element imageElement : imageElements) {
-                // extract ID from image element
-                String id = imageElement.attr("src");
-
-                // add ID to list
-                currentImageIDs.add(Long.parseLong(id));
-            }
+    // sanitise and process every rich text field in data (see processRichTextField)
+    //
+    // the new images in every field are stored together once all the fields have been parsed, so that they are
+    // inserted in one statement, and the dimensions of linked images are found in one query
+    private void processRichTextFields(CaseStudyUpload data, CaseStudyUploadImages images, Map<Long, Integer> linkedImages) {
+        Map<Element, Image> newImages = new LinkedHashMap<>();
+        Map<Element, Long> linkedImageElements = new LinkedHashMap<>();
+        Document problemDescription = processRichTextField(data.getProblemDescription(), images, linkedImages, newImages, linkedImageElements);
+        Document solutionDescription = processRichTextField(data.getSolutionDescription(), images, linkedImages, newImages, linkedImageElements);
+        Document outcomes = processRichTextField(data.getOutcomes(), images, linkedImages, newImages, linkedImageElements);
+        Document toolsUsed = processRichTextField(data.getToolsUsed(), images, linkedImages, newImages, linkedImageElements);
+        Document projectLearnings = processRichTextField(data.getProjectLearnings(), images, linkedImages, newImages, linkedImageElements);
+
+        imageService.storeAll(newImages.values());
+        newImages.forEach((imageElement, image) -> {
+            imageElement.attr("src", IMAGE_PATH + image.getImageId());
+            setImageAttributes(imageElement, image);
+        });
+
+        Map<Long, Image> linkedImageMetadata = new HashMap<>();
+        for (Image metadata : imageService.getMetadata(new HashSet<>(linkedImageElements.values()))) {
+            linkedImageMetadata.put(metadata.getImageId(), metadata);
         }
+        linkedImageElements.forEach((imageElement, imageId) -> {
+            Image metadata = linkedImageMetadata.get(imageId);
+            if (metadata != null) setImageAttributes(imageElement, metadata);
+        });
+
+        data.setProblemDescription(getHtml(problemDescription));
+        data.setSolutionDescription(getHtml(solutionDescription));
+        data.setOutcomes(getHtml(outcomes));
+        data.setToolsUsed(getHtml(toolsUsed));
+        data.setProjectLearnings(getHtml(projectLearnings));
+    }
 
-        // insert into database any images found in rich text fields, and replace base64 with image ID
-        richTextFields = Arrays.asList(data.getProblemDescription(), data.getSolutionDescription(), data.getOutcomes(), data.getToolsUsed(), data.getProjectLearnings());
-        List<String> newRichTextFields = new ArrayList<>();
-        for (String field : richTextFields) {
-            if (field == null) {
-                newRichTextFields.add(null);
-                continue;
-            }
-            Document document = Jsoup.parse(field);
-            Elements imageElements = document.select("img"); // get all image elements
-            for (Element imageElement : imageElements) {
-                // extract src from image element
-                String src = imageElement.attr("src");
-
-                // check if src is not a link (meaning that it is base64)
-                String regex = "^https?://.+/api/images/\\d+$";
-                boolean isBase64 = !src.matches(regex);
-
-                // if src is base64 then it is a new image and should be decoded, inserted into database, and replaced
-                if (isBase64) {
-                    // decode base64 and insert image into database
-                    Image image = getImageFromBase64(src);
-                    imageMapper.insert(image);
-
-                    // get ID of image
-                    Long id = image.getImageId();
-
-                    // replace base64 in field with image ID
-                    Element newImageElement = new Element("img");
-                    newImageElement.attr("src", id.toString());
-                    imageElement.replaceWith(newImageElement);
-                } else {
-                    // src is a link here, meaning that it existed in database before, and still does now, so
-                    // remove the corresponding ID from the list of current IDs
-                    String[] tokens = src.split("/");
-                    Long imgId = Long.parseLong(tokens[tokens.length - 1]);
-                    currentImageIDs.removeIf(id -> id.equals(imgId));
-
-                    // replace link with image ID
-                    Element newImageElement = new Element("img");
-                    newImageElement.attr("src", imgId.toString());
-                    imageElement.replaceWith(newImageElement);
-                }
+    // sanitise the html in a rich text field, and in the same pass find any new images in it (either base64, or
+    // placeholders for images which were decoded while the upload was read), adding them to newImages so that they can
+    // be stored and replaced with image links
+    //
+    // links to existing images are only accepted if linkedImages is not null, in which case the number of links to each
+    // image is counted in it
+    private Document processRichTextField(String field, CaseStudyUploadImages images, Map<Long, Integer> linkedImages,
+                                          Map<Element, Image> newImages, Map<Element, Long> linkedImageElements) {
+        if (field == null) return null;
+
+        // parse the field once, and work on the sanitised copy of it
+        Document document = RICH_TEXT_CLEANER.clean(Jsoup.parseBodyFragment(field));
+        for (Element imageElement : document.select("img")) {
+            // sanitising only keeps the src attribute, so it can be replaced in place (the other attributes of the image
+            // are set once it has been stored, see setImageAttributes)
+            String src = imageElement.attr("src");
+            Matcher linkMatcher = IMAGE_LINK.matcher(src);
+            if (linkedImages != null && linkMatcher.matches()) {
+                // src is a link to an image that is already in the database, so store the link without the API URL
+                Long imageId = Long.parseLong(linkMatcher.group(1));
+                linkedImages.merge(imageId, 1, Integer::sum);
+                linkedImageElements.put(imageElement, imageId);
+                imageElement.attr("src", IMAGE_PATH + imageId);
+            } else {
+                // otherwise src must be a placeholder or base64, so get the image to be inserted into the database
+                Image image = CaseStudyUploadImages.isPlaceholder(src) ? images.getImage(src) : getImageFromBase64(src);
+                newImages.put(imageElement, image);
             }
-            String newHtml = document.select("body").html();
-            newRichTextFields.add(newHtml);
         }
-
-        // replace rich text fields in data with updated ones
-        data.setProblemDescription(newRichTextFields.get(0));
-        data.setSolutionDescription(newRichTextFields.get(1));
-        data.setOutcomes(newRichTextFields.get(2));
-        data.setToolsUsed(newRichTextFields.get(3));
-        data.setProjectLearnings(newRichTextFields.get(4));
-
-        // if any IDs remain in the list of current IDs, then it means that these images were in the case study
-        // previously, but have been removed in the new case study data, so these images must now be deleted from
-        // the database
-        currentImageIDs.forEach(imageMapper::delete);
+        return document;
     }
 
-    // delete from database any images found in rich text fields
-    private void deleteImagesFoundInRichTextFields(CaseStudy caseStudy) {
-        List<String> richTextFields = Arrays.asList(caseStudy.getProblemDescription(), caseStudy.getSolutionDescription(), caseStudy.getOutcomes(), caseStudy.getToolsUsed(), caseStudy.getProjectLearnings());
-        for (String field : richTextFields) {
-            if (field == null) continue;
-            Document document = Jsoup.parse(field);
-            Elements imageElements = document.select("img"); // get all image elements
-            for (Element imageElement : imageElements) {
-                // extract id from image element
-                String imgId = imageElement.attr("src");
-
-                // delete image from database
-                imageMapper.delete(Long.parseLong(imgId));
-            }
+    // set the width and height of an image in a rich text field, and show its placeholder as its background while it
+    // loads, so that the page doesn't move when it has loaded (these are not kept by the cleaner, so they can only be
+    // set from the stored image)
+    private static void setImageAttributes(Element imageElement, Image image) {
+        if (image.getWidth() == null || image.getHeight() == null) return;
+        imageElement.attr("width", image.getWidth().toString());
+        imageElement.attr("height", image.getHeight().toString());
+        if (image.getPlaceholder() != null) {
+            imageElement.attr("style", "background-image: url(" + image.getPlaceholder() + ")");
         }
     }
 
-    // sanitise the html in all rich text fields
-    private void sanitiseRichTextFields(CaseStudyUpload data) {
-        // create a sanitised version of each rich text field
-        List<String> richTextFields = Arrays.asList(data.getProblemDescription(), data.getSolutionDescription(), data.getOutcomes(), data.getToolsUsed(), data.getProjectLearnings());
-        List<String> newRichTextFields = new ArrayList<>();
-        for (String field : richTextFields) {
-            if (field == null) {
-                newRichTextFields.add(null);
-                continue;
-            }
-            String safeHtml = Jsoup.clean(field, Safelist.basic().addTags("img").addAttributes("img", "src"));
-            newRichTextFields.add(safeHtml);
+    // get a stored rich text field with the attributes of every link to the image set from its metadata, or null if they
+    // haven't changed
+    private static String updateImageAttributes(String field, Image metadata) {
+        if (field == null) return null;
+        Document document = Jsoup.parseBodyFragment(field);
+        for (Element imageElement : document.select("img[src=" + IMAGE_PATH + metadata.getImageId() + "]")) {
+            imageElement.removeAttr("width").removeAttr("height").removeAttr("style");
+            setImageAttributes(imageElement, metadata);
         }
+        String updated = getHtml(document);
+        return updated.equals(field) ? null : updated;
+    }
 
-        // replace rich text fields in data with sanitised ones
-        data.setProblemDescription(newRichTextFields.get(0));
-        data.setSolutionDescription(newRichTextFields.get(1));
-        data.setOutcomes(newRichTextFields.get(2));
-        data.setToolsUsed(newRichTextFields.get(3));
-        data.setProjectLearnings(newRichTextFields.get(4));
+    private static String getHtml(Document document) {
+        return document != null ? document.body().html() : null;
     }
 }
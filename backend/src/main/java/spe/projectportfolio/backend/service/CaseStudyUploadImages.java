@@ -0,0 +1,206 @@
+package spe.projectportfolio.backend.service;
+
+import jakarta.servlet.http.Part;
+import lombok.Getter;
+import lombok.Setter;
+import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.UploadedImage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// images sent in a case study upload which are not base64 in the case study itself, which are either images decoded
+// while the upload was read (which are kept in temporary files until they are inserted into the database) or binary
+// parts of a multipart upload (which are copied to temporary files when they are used)
+//
+// the images are returned with their files rather than their data (see Image.file), so that they are hashed and
+// stored without reading them into memory
+//
+// rich text fields refer to these images by placeholders used as their src, which are either "upload:" followed by the
+// index of a decoded image, or "cid:" followed by the name of a part
+//
+// the temporary files are deleted when this is closed
+public class CaseStudyUploadImages implements AutoCloseable {
+    public static final String PLACEHOLDER_PREFIX = "upload:";
+    public static final String PART_PREFIX = "cid:";
+
+    private final List<ImageWriter> writers = new ArrayList<>();
+    private final List<Path> partFiles = new ArrayList<>();
+    private final List<UploadedImage> images = new ArrayList<>();
+    private final Map<String, Part> parts = new HashMap<>();
+
+    @Getter
+    @Setter
+    private UploadedImage clientLogo;
+
+    @Getter
+    @Setter
+    private Part clientLogoPart;
+
+    // create a writer which decodes a data URI (without "data:" at the start) to a temporary file
+    ImageWriter createImageWriter() throws IOException {
+        ImageWriter writer = new ImageWriter(Files.createTempFile("case-study-upload", ".img"));
+        writers.add(writer);
+        return writer;
+    }
+
+    // add an image found in a rich text field, returning the placeholder to use as its src
+    String addImage(UploadedImage image) {
+        images.add(image);
+        return PLACEHOLDER_PREFIX + (images.size() - 1);
+    }
+
+    // add a binary part of a multipart upload, which rich text fields can refer to by its name
+    public void addPart(Part part) {
+        parts.put(part.getName(), part);
+    }
+
+    public static boolean isPlaceholder(String src) {
+        return src.startsWith(PLACEHOLDER_PREFIX) || src.startsWith(PART_PREFIX);
+    }
+
+    // get the image with the given placeholder, throwing IllegalArgumentException if there is no such image
+    public Image getImage(String placeholder) {
+        if (placeholder.startsWith(PART_PREFIX)) {
+            Part part = parts.get(placeholder.substring(PART_PREFIX.length()));
+            if (part == null) throw new IllegalArgumentException("Invalid image placeholder: " + placeholder);
+            return readPart(part);
+        }
+
+        int index;
+        try {
+            index = Integer.parseInt(placeholder.substring(PLACEHOLDER_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid image placeholder: " + placeholder);
+        }
+        if (index < 0 || index >= images.size()) throw new IllegalArgumentException("Invalid image placeholder: " + placeholder);
+        return readImage(images.get(index));
+    }
+
+    public Image getClientLogoImage() {
+        if (clientLogoPart != null) return readPart(clientLogoPart);
+        return clientLogo == null ? null : readImage(clientLogo);
+    }
+
+    @Override
+    public void close() {
+        writers.forEach(ImageWriter::delete);
+        for (Path file : partFiles) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // the file is in the temporary directory, so it will be removed eventually anyway
+            }
+        }
+    }
+
+    private static Image readImage(UploadedImage uploadedImage) {
+        return new Image(uploadedImage.getFile(), uploadedImage.getType());
+    }
+
+    private Image readPart(Part part) {
+        String contentType = part.getContentType();
+        if (contentType == null || !contentType.startsWith("image/")) throw new IllegalArgumentException("Part " + part.getName() + " is not an image");
+        try (InputStream in = part.getInputStream()) {
+            Path file = Files.createTempFile("case-study-upload", ".img");
+            partFiles.add(file);
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            return new Image(file, CaseStudyService.getImageTypeFromMediaType(contentType));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // decodes a data URI (without "data:" at the start) written to it a few characters at a time to a temporary file,
+    // so that only a small buffer of the image is in memory at once
+    static class ImageWriter extends Writer {
+        private static final int MAX_HEADER_LENGTH = 100;
+
+        // base64 is decoded in chunks of this many characters (which must be a multiple of 4)
+        private static final int CHUNK_SIZE = 8192;
+
+        private final Path file;
+        private final StringBuilder header = new StringBuilder();
+        private final byte[] base64 = new byte[CHUNK_SIZE];
+        private final byte[] decoded = new byte[CHUNK_SIZE / 4 * 3];
+        private int base64Length = 0;
+        private OutputStream out; // null until the header has been read
+
+        private ImageWriter(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                write(chars[i]);
+            }
+        }
+
+        void write(char c) throws IOException {
+            if (out == null) {
+                // the header (e.g. "image/png;base64") ends at the first comma
+                if (c == ',') {
+                    if (!header.toString().endsWith(";base64")) throw new IllegalArgumentException("Data URI is not base64");
+                    out = new BufferedOutputStream(Files.newOutputStream(file));
+                } else if (header.length() < MAX_HEADER_LENGTH) {
+                    header.append(c);
+                } else {
+                    throw new IllegalArgumentException("Invalid data URI");
+                }
+                return;
+            }
+
+            if (c > 127) throw new IllegalArgumentException("Invalid base64");
+            base64[base64Length++] = (byte) c;
+            if (base64Length == CHUNK_SIZE) {
+                int decodedLength = Base64.getDecoder().decode(base64, decoded);
+                out.write(decoded, 0, decodedLength);
+                base64Length = 0;
+            }
+        }
+
+        // decode the rest of the data URI, and get the decoded image
+        UploadedImage finish() throws IOException {
+            if (out == null) throw new IllegalArgumentException("Invalid data URI");
+            if (base64Length > 0) {
+                out.write(Base64.getDecoder().decode(Arrays.copyOf(base64, base64Length)));
+                base64Length = 0;
+            }
+            out.close();
+            String mediaType = header.substring(0, header.indexOf(";"));
+            return new UploadedImage(CaseStudyService.getImageTypeFromMediaType(mediaType), file);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) out.close();
+        }
+
+        private void delete() {
+            try {
+                close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // the file is in the temporary directory, so it will be removed eventually anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package spe.projectportfolio.backend.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import spe.projectportfolio.backend.pojo.CaseStudyUpload;
+import spe.projectportfolio.backend.pojo.UploadedImage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Set;
+
+// reads case study uploads from JSON as it is streamed in, decoding base64 images (the client logo and any images in
+// rich text fields) to temporary files as they are read, so that whole images are never held as strings
+//
+// images in rich text fields are replaced by placeholders (see CaseStudyUploadImages) before the HTML is parsed
+@RequiredArgsConstructor
+@Component
+public class CaseStudyUploadReader {
+    private static final String CLIENT_LOGO_FIELD = "clientLogoBase64";
+    private static final Set<String> RICH_TEXT_FIELDS = Set.of("problemDescription", "solutionDescription", "outcomes", "toolsUsed", "projectLearnings");
+
+    private final ObjectMapper objectMapper;
+
+    // read a case study upload, adding the images found in it to images, throwing IllegalArgumentException or
+    // IOException if it is invalid
+    public CaseStudyUpload read(InputStream in, CaseStudyUploadImages images) throws IOException {
+        // all other fields are small, so they are collected and converted in the same way as any other request body
+        ObjectNode fields = objectMapper.createObjectNode();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) throw new IllegalArgumentException("Case study upload must be a JSON object");
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.VALUE_STRING && name.equals(CLIENT_LOGO_FIELD)) {
+                    ClientLogoWriter writer = new ClientLogoWriter(images);
+                    parser.getText(writer);
+                    images.setClientLogo(writer.finish());
+                } else if (token == JsonToken.VALUE_STRING && RICH_TEXT_FIELDS.contains(name)) {
+                    RichTextWriter writer = new RichTextWriter(images);
+                    parser.getText(writer);
+                    fields.put(name, writer.finish());
+                } else {
+                    fields.set(name, parser.readValueAsTree());
+                }
+            }
+        }
+
+        return objectMapper.treeToValue(fields, CaseStudyUpload.class);
+    }
+
+    // decodes the client logo, which is a data URI (or empty if there is no new logo)
+    private static class ClientLogoWriter extends Writer {
+        private static final String PREFIX = "data:";
+
+        private final CaseStudyUploadImages images;
+        private final StringBuilder prefix = new StringBuilder();
+        private CaseStudyUploadImages.ImageWriter imageWriter;
+
+        private ClientLogoWriter(CaseStudyUploadImages images) {
+            this.images = images;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                if (imageWriter != null) {
+                    imageWriter.write(chars, i, offset + length - i);
+                    return;
+                }
+                prefix.append(chars[i]);
+                if (!PREFIX.startsWith(prefix.toString())) throw new IllegalArgumentException("Client logo is not a data URI");
+                if (prefix.length() == PREFIX.length()) imageWriter = images.createImageWriter();
+            }
+        }
+
+        private UploadedImage finish() throws IOException {
+            if (prefix.isEmpty()) return null;
+            if (imageWriter == null) throw new IllegalArgumentException("Client logo is not a data URI");
+            return imageWriter.finish();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // copies the HTML of a rich text field, decoding the data URIs in the src of images and replacing them with
+    // placeholders
+    private static class RichTextWriter extends Writer {
+        private static final String[] DATA_URI_SOURCES = {"src=\"data:", "src='data:"};
+
+        private final CaseStudyUploadImages images;
+        private final StringBuilder html = new StringBuilder();
+        private CaseStudyUploadImages.ImageWriter imageWriter; // not null while inside a data URI
+        private char quote;
+
+        private RichTextWriter(CaseStudyUploadImages images) {
+            this.images = images;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                char c = chars[i];
+                if (imageWriter != null) {
+                    if (c == quote) {
+                        // end of the data URI, so replace it with the placeholder of the decoded image
+                        html.append(images.addImage(imageWriter.finish())).append(c);
+                        imageWriter = null;
+                    } else {
+                        imageWriter.write(c);
+                    }
+                    continue;
+                }
+
+                html.append(c);
+                if (c == ':' && isStartOfDataUriSource()) {
+                    // remove "data:" so that only the src attribute and its opening quote remain
+                    html.setLength(html.length() - "data:".length());
+                    quote = html.charAt(html.length() - 1);
+                    imageWriter = images.createImageWriter();
+                }
+            }
+        }
+
+        private boolean isStartOfDataUriSource() {
+            for (String source : DATA_URI_SOURCES) {
+                int start = html.length() - source.length();
+                if (start >= 0 && html.indexOf(source, start) == start) return true;
+            }
+            return false;
+        }
+
+        private String finish() {
+            if (imageWriter != null) throw new IllegalArgumentException("Unterminated image src");
+            return html.toString();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
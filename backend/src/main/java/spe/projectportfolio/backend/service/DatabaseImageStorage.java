@@ -0,0 +1,49 @@
+package spe.projectportfolio.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import spe.projectportfolio.backend.mapper.ImageMapper;
+import spe.projectportfolio.backend.pojo.Image;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+// keeps the data of images in the Data column of the Image table
+@RequiredArgsConstructor
+@Component
+public class DatabaseImageStorage implements ImageStorage {
+    // image data is read from the database in chunks of this many bytes, so that whole images are never in memory
+    public static final int CHUNK_SIZE = 256 * 1024;
+
+    private final ImageMapper imageMapper;
+
+    @Override
+    public void save(Image image) throws IOException {
+        // the data is inserted along with the rest of the image, so an image in a file has to be read into memory
+        if (image.getFile() != null) image.setData(Files.readAllBytes(image.getFile()));
+        image.setPath(null);
+    }
+
+    @Override
+    public boolean contains(Image metadata) {
+        return metadata.getPath() == null;
+    }
+
+    // the data is read a chunk at a time, so this must be done in a transaction for every chunk to come from the same
+    // version of the image
+    @Override
+    public void copy(Image metadata, long offset, long length, OutputStream out) throws IOException {
+        long end = offset + length;
+        for (long position = offset; position < end; position += CHUNK_SIZE) {
+            Image chunk = imageMapper.findDataChunk(metadata.getImageId(), position, (int) Math.min(CHUNK_SIZE, end - position));
+            if (chunk == null || chunk.getData() == null) throw new IOException("Image " + metadata.getImageId() + " was deleted while it was being read");
+            out.write(chunk.getData());
+        }
+    }
+
+    @Override
+    public void delete(Image metadata) {
+        // the data is deleted along with the rest of the image
+    }
+}
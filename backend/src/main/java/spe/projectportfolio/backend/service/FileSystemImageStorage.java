@@ -0,0 +1,199 @@
+package spe.projectportfolio.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import spe.projectportfolio.backend.mapper.ImageMapper;
+import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.ImageGarbageCollectionStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+// keeps the data of images in files named by the hash of their data, so that the database only holds their metadata
+//
+// files are written to a temporary file first and then moved into place, so that a partly written file is never
+// served, and since images with the same data share a file, a file is only deleted once no image refers to it
+@Slf4j
+@Component
+public class FileSystemImageStorage implements ImageStorage {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final ImageMapper imageMapper;
+    private final Path directory;
+
+    public FileSystemImageStorage(ImageMapper imageMapper, @Value("${app.image-storage.directory}") Path directory) {
+        this.imageMapper = imageMapper;
+        this.directory = directory;
+    }
+
+    @Override
+    public void save(Image image) throws IOException {
+        String hash = image.getHash() != null ? image.getHash() : ImageService.hash(image.getData());
+        String path = getPath(hash);
+        byte[] data = image.getData();
+        Path source = image.getFile();
+        write(path, data, source);
+        image.setPath(path);
+        image.setData(null);
+
+        // if the last image referring to the same file was deleted at the same time, the file could have been deleted
+        // after it was written, so it is written again
+        afterCommit(() -> {
+            if (Files.exists(getFile(path))) return;
+            try {
+                write(path, data, source);
+            } catch (IOException e) {
+                log.error("Could not write image file {}: {}", path, e.getMessage());
+            }
+        });
+    }
+
+    // copy the data of an image from another storage to a file, returning its path
+    public String saveFrom(ImageStorage source, Image metadata) throws IOException {
+        Path temporaryFile = createTemporaryFile();
+        MessageDigest digest = ImageService.createDigest();
+        try {
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temporaryFile), digest)) {
+                source.copy(metadata, out);
+            }
+            String path = getPath(HexFormat.of().formatHex(digest.digest()));
+            moveIntoPlace(temporaryFile, path);
+            return path;
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    @Override
+    public boolean contains(Image metadata) {
+        return metadata.getPath() != null;
+    }
+
+    // this is a plain buffered copy, since out is not a channel which the file could be transferred to directly (files
+    // are only sent to the socket without copying them through the heap when ImageController can use sendfile)
+    @Override
+    public void copy(Image metadata, long offset, long length, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(getFile(metadata.getPath()))) {
+            InputStream in = Channels.newInputStream(channel.position(offset));
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            for (long remaining = length; remaining > 0; ) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) throw new IOException("Image file " + metadata.getPath() + " is shorter than expected");
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    // get the file holding the data of an image
+    public Path getFile(String path) {
+        return directory.resolve(path);
+    }
+
+    @Override
+    public void delete(Image metadata) {
+        String path = metadata.getPath();
+        if (path == null) return;
+        afterCommit(() -> {
+            if (imageMapper.countByPath(path) > 0) return;
+            try {
+                Files.deleteIfExists(getFile(path));
+            } catch (IOException e) {
+                log.warn("Could not delete image file {}: {}", path, e.getMessage());
+            }
+        });
+    }
+
+    // delete files which no image refers to and which were last written before the given time (e.g. files written for
+    // images whose transaction was rolled back, or temporary files left by a crash), returning how many were deleted
+    // and their total size
+    //
+    // files are written again whenever an image with the same data is stored, so a file which has not been written
+    // since the given time can't be in the middle of being stored
+    public ImageGarbageCollectionStats deleteUnusedFiles(Instant writtenBefore) throws IOException {
+        ImageGarbageCollectionStats deleted = new ImageGarbageCollectionStats();
+        if (!Files.isDirectory(directory)) return deleted;
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory, 2)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+        for (Path file : files) {
+            String path = directory.relativize(file).toString().replace(File.separatorChar, '/');
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attributes.lastModifiedTime().toInstant().isBefore(writtenBefore) || imageMapper.countByPath(path) > 0) continue;
+                Files.delete(file);
+                deleted.setFiles(deleted.getFiles() + 1);
+                deleted.setBytes(deleted.getBytes() + attributes.size());
+            } catch (NoSuchFileException e) {
+                // the file was deleted by something else
+            }
+        }
+        return deleted;
+    }
+
+    // files are spread between directories named by the first two characters of their hash, so that no directory has
+    // too many files in it
+    private static String getPath(String hash) {
+        return hash.substring(0, 2) + "/" + hash;
+    }
+
+    // write the data of an image to a file, copying it from source if it is in a file rather than in data
+    private void write(String path, byte[] data, Path source) throws IOException {
+        Path temporaryFile = createTemporaryFile();
+        try {
+            if (source != null) {
+                Files.copy(source, temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.write(temporaryFile, data);
+            }
+            moveIntoPlace(temporaryFile, path);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private Path createTemporaryFile() throws IOException {
+        Files.createDirectories(directory);
+        return Files.createTempFile(directory, "image", ".tmp");
+    }
+
+    private void moveIntoPlace(Path temporaryFile, String path) throws IOException {
+        Path file = getFile(path);
+        Files.createDirectories(file.getParent());
+        Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // run an action after the current transaction is committed (or straight away if there is no transaction)
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,42 @@
+package spe.projectportfolio.backend.service;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.MyBatisExceptionTranslator;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import spe.projectportfolio.backend.mapper.ImageMapper;
+import spe.projectportfolio.backend.pojo.Image;
+
+import java.util.Collection;
+
+// inserts several images using a JDBC batch of ImageMapper.insert statements, so that each image is sent in its own
+// statement (which a single statement with every image's data could be too large to send) but in one round trip
+//
+// the batch uses its own MyBatis session, since the mappers' session can't change its executor type in a transaction,
+// but it uses the same connection, so it is part of the current transaction
+@Component
+public class ImageBatchInserter {
+    private final SqlSessionFactory sqlSessionFactory;
+    private final MyBatisExceptionTranslator exceptionTranslator;
+
+    public ImageBatchInserter(SqlSessionFactory sqlSessionFactory) {
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.exceptionTranslator = new MyBatisExceptionTranslator(
+                sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(), true);
+    }
+
+    // insert the images, setting their IDs
+    public void insertAll(Collection<Image> images) {
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+            ImageMapper imageMapper = session.getMapper(ImageMapper.class);
+            images.forEach(imageMapper::insert);
+            session.flushStatements();
+        } catch (RuntimeException e) {
+            // translated like the mappers' exceptions, so that duplicate hashes are a DuplicateKeyException
+            DataAccessException translated = exceptionTranslator.translateExceptionIfPossible(e);
+            throw translated == null ? e : translated;
+        }
+    }
+}
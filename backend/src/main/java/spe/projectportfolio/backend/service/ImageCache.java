@@ -0,0 +1,161 @@
+package spe.projectportfolio.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.ImageCacheStats;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// least recently used cache of the data of small images (such as client logos, which are shown for every case study
+// on the home page), so that they can be sent without going to the database
+//
+// the data is kept in direct buffers outside the heap, so that it doesn't add to the work of the garbage collector, and
+// the cache holds at most the configured number of bytes
+//
+// images are removed whenever they are modified, and expire after a while so that images modified by another server
+// are eventually seen
+@Component
+public class ImageCache {
+    private final long maxBytes;
+    private final long maxImageBytes;
+    private final Duration expireAfter;
+
+    // in order of access, from least to most recently used
+    private final LinkedHashMap<Long, CachedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    // incremented whenever an image is removed, so that an image read before it was modified is not cached after
+    private long generation = 0;
+
+    public ImageCache(@Value("${app.image-cache.max-size}") DataSize maxSize,
+                      @Value("${app.image-cache.max-image-size}") DataSize maxImageSize,
+                      @Value("${app.image-cache.expire-after}") Duration expireAfter) {
+        this.maxBytes = maxSize.toBytes();
+        this.maxImageBytes = maxImageSize.toBytes();
+        this.expireAfter = expireAfter;
+    }
+
+    // get a cached image, or null if it is not cached
+    public synchronized CachedImage get(Long id) {
+        CachedImage image = images.get(id);
+        if (image != null && Instant.now().isAfter(image.expiresAt)) {
+            remove(id);
+            image = null;
+        }
+        if (image == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return image;
+    }
+
+    // get the current generation, which must be done before reading an image which will be cached
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    // check if an image is small enough to be cached
+    public boolean canCache(Image metadata) {
+        return metadata.getSize() <= maxImageBytes && metadata.getSize() <= maxBytes;
+    }
+
+    // cache an image with its version tag (see ImageService.getVersionTag), unless it has been modified since the given generation (which must have been got
+    // before its metadata and data were read)
+    public synchronized void put(Image metadata, String versionTag, byte[] data, long readGeneration) {
+        if (readGeneration != generation || !canCache(metadata)) return;
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length).put(data).flip();
+        remove(metadata.getImageId());
+        images.put(metadata.getImageId(), new CachedImage(metadata, versionTag, buffer.asReadOnlyBuffer(), Instant.now().plus(expireAfter)));
+        bytes += data.length;
+
+        // evict the least recently used images until the cache is within its size
+        Iterator<Map.Entry<Long, CachedImage>> iterator = images.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().getSize();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    // remove an image from the cache, which must be done whenever it is modified
+    public void invalidate(Long id) {
+        removeModified(id);
+
+        // a request could cache the old image again before the transaction modifying it is committed, so it is
+        // removed again after the commit
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeModified(id);
+                }
+            });
+        }
+    }
+
+    public synchronized ImageCacheStats getStats() {
+        return new ImageCacheStats(hits, misses, evictions, images.size(), bytes, maxBytes);
+    }
+
+    private synchronized void removeModified(Long id) {
+        generation++;
+        remove(id);
+    }
+
+    private synchronized void remove(Long id) {
+        CachedImage image = images.remove(id);
+        if (image != null) bytes -= image.getSize();
+    }
+
+    // an image in the cache, which is never modified (its data is read-only, and each request reads it using its own
+    // view of the buffer)
+    public static class CachedImage {
+        private final Image metadata;
+        private final String versionTag;
+        private final ByteBuffer data;
+        private final Instant expiresAt;
+
+        private CachedImage(Image metadata, String versionTag, ByteBuffer data, Instant expiresAt) {
+            this.metadata = metadata;
+            this.versionTag = versionTag;
+            this.data = data;
+            this.expiresAt = expiresAt;
+        }
+
+        // get the metadata of the image (which must not be modified)
+        public Image getMetadata() {
+            return metadata;
+        }
+
+        // get the version tag of the image (see ImageService.getVersionTag)
+        public String getVersionTag() {
+            return versionTag;
+        }
+
+        public long getSize() {
+            return data.capacity();
+        }
+
+        // write length bytes of the data starting at offset (from 0)
+        public void writeTo(OutputStream out, long offset, long length) throws IOException {
+            Channels.newChannel(out).write(data.slice(Math.toIntExact(offset), Math.toIntExact(length)));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package spe.projectportfolio.backend.service;
+
+import spe.projectportfolio.backend.pojo.enums.ImageType;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+// decodes, scales and encodes images using javax.imageio
+//
+// image metadata (e.g. EXIF) is never read or written, so encoded images only contain their pixels
+final class ImageCodec {
+    private ImageCodec() {
+    }
+
+    // get the width and height of an image without decoding it, throwing IllegalArgumentException if it can't be read
+    static Dimension getSize(byte[] data) throws IOException {
+        return getSize(ImageIO.createImageInputStream(new ByteArrayInputStream(data)));
+    }
+
+    // get the width and height of an image in a file (see getSize)
+    static Dimension getSize(Path file) throws IOException {
+        return getSize(ImageIO.createImageInputStream(file.toFile()));
+    }
+
+    private static Dimension getSize(ImageInputStream input) throws IOException {
+        try (ImageInputStream in = input) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IllegalArgumentException("Image could not be read");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // decode an image which will be scaled to fit within the given width and height (0 if there is no limit), throwing
+    // IllegalArgumentException if it can't be read or has more than maxPixels pixels
+    //
+    // the size is checked before the image is decoded, so that very large images are not decoded, and if the image is
+    // much larger than it will be scaled to, only every nth pixel is decoded (keeping at least twice as many pixels as
+    // it will be scaled to, so that it can still be scaled smoothly)
+    static BufferedImage read(byte[] data, long maxPixels, int maxWidth, int maxHeight) throws IOException {
+        return read(ImageIO.createImageInputStream(new ByteArrayInputStream(data)), maxPixels, maxWidth, maxHeight);
+    }
+
+    // decode an image in a file (see read)
+    static BufferedImage read(Path file, long maxPixels, int maxWidth, int maxHeight) throws IOException {
+        return read(ImageIO.createImageInputStream(file.toFile()), maxPixels, maxWidth, maxHeight);
+    }
+
+    private static BufferedImage read(ImageInputStream input, long maxPixels, int maxWidth, int maxHeight) throws IOException {
+        try (ImageInputStream in = input) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IllegalArgumentException("Image could not be read");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) throw new IllegalArgumentException("Image is too large");
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, (int) (0.5 / getScale(width, height, maxWidth, maxHeight)));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // scale an image to fit within the given width and height (0 if there is no limit), without enlarging it
+    //
+    // images which will be encoded as JPEG (which has no transparency) are put on a white background
+    static BufferedImage scale(BufferedImage image, int maxWidth, int maxHeight, ImageType type) {
+        double scale = getScale(image.getWidth(), image.getHeight(), maxWidth, maxHeight);
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        boolean isJpeg = type == ImageType.JPEG;
+        BufferedImage scaled = new BufferedImage(width, height, isJpeg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (isJpeg) {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+            }
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    // encode an image, with the given quality from 1 to 100 for JPEG (PNG is always compressed as much as possible)
+    static byte[] encode(BufferedImage image, ImageType type, int quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(type == ImageType.JPEG ? "jpeg" : "png").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(type == ImageType.JPEG ? quality / 100f : 0f);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    // get how much an image must be scaled by to fit within the given width and height (images are never enlarged)
+    private static double getScale(int width, int height, int maxWidth, int maxHeight) {
+        double scale = 1;
+        if (maxWidth > 0) scale = Math.min(scale, (double) maxWidth / width);
+        if (maxHeight > 0) scale = Math.min(scale, (double) maxHeight / height);
+        return scale;
+    }
+}
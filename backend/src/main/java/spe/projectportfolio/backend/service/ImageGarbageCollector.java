@@ -0,0 +1,128 @@
+package spe.projectportfolio.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import spe.projectportfolio.backend.mapper.CaseStudyMapper;
+import spe.projectportfolio.backend.mapper.ImageMapper;
+import spe.projectportfolio.backend.pojo.CaseStudy;
+import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.ImageGarbageCollectionStats;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// background job which deletes images that no case study refers to (e.g. images uploaded with POST /api/images which
+// were never used, or images left behind by failed edits), and image files that no image refers to
+//
+// images referred to by case studies are found by going through every case study a page at a time (mark), and then the
+// rest of the images are deleted a page at a time (sweep), pausing after each page so that it doesn't compete with
+// requests for the database
+//
+// an image is only deleted if it hasn't been stored or referenced for the grace period before the case studies were
+// gone through, so images which are about to be used (or were used while the case studies were being gone through)
+// are kept
+@Slf4j
+@Component
+public class ImageGarbageCollector {
+    private final CaseStudyMapper caseStudyMapper;
+    private final ImageMapper imageMapper;
+    private final ImageService imageService;
+    private final FileSystemImageStorage fileSystemStorage;
+    private final Duration gracePeriod;
+    private final int batchSize;
+    private final Duration delay;
+    private final ImageGarbageCollectionStats stats = new ImageGarbageCollectionStats();
+
+    public ImageGarbageCollector(CaseStudyMapper caseStudyMapper,
+                                 ImageMapper imageMapper,
+                                 ImageService imageService,
+                                 FileSystemImageStorage fileSystemStorage,
+                                 @Value("${app.image-gc.grace-period}") Duration gracePeriod,
+                                 @Value("${app.image-gc.batch-size}") int batchSize,
+                                 @Value("${app.image-gc.delay}") Duration delay) {
+        this.caseStudyMapper = caseStudyMapper;
+        this.imageMapper = imageMapper;
+        this.imageService = imageService;
+        this.fileSystemStorage = fileSystemStorage;
+        this.gracePeriod = gracePeriod;
+        this.batchSize = batchSize;
+        this.delay = delay;
+    }
+
+    @Scheduled(initialDelayString = "${app.image-gc.interval}", fixedDelayString = "${app.image-gc.interval}")
+    public void collectOnSchedule() {
+        try {
+            ImageGarbageCollectionStats deleted = collect();
+            if (deleted.getImages() > 0 || deleted.getFiles() > 0) {
+                log.info("Deleted {} unreferenced images and {} unused image files, reclaiming {} bytes",
+                        deleted.getImages(), deleted.getFiles(), deleted.getBytes());
+            }
+        } catch (DataAccessException | IOException | IllegalArgumentException e) {
+            // nothing more is deleted if a case study can't be read, since the images it refers to are not known
+            log.warn("Could not delete unreferenced images: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // delete every unreferenced image and unused image file, returning how many were deleted and their total size
+    public ImageGarbageCollectionStats collect() throws IOException, InterruptedException {
+        ImageGarbageCollectionStats deleted = new ImageGarbageCollectionStats();
+        deleted.setRuns(1);
+
+        // the time is taken before marking, so that images referenced while marking are kept
+        LocalDateTime referencedBefore = imageMapper.getCurrentTime().minus(gracePeriod);
+        Instant writtenBefore = Instant.now().minus(gracePeriod);
+        Set<Long> referencedIds = findReferencedImageIds();
+
+        Long lastId = 0L;
+        List<Long> ids;
+        while (!(ids = imageMapper.findIdsReferencedBefore(lastId, referencedBefore, batchSize)).isEmpty()) {
+            List<Long> unreferencedIds = ids.stream().filter(id -> !referencedIds.contains(id)).toList();
+            if (!unreferencedIds.isEmpty()) {
+                for (Image image : imageService.deleteUnused(unreferencedIds, referencedBefore)) {
+                    deleted.setImages(deleted.getImages() + 1);
+                    deleted.setBytes(deleted.getBytes() + image.getSize());
+                }
+                Thread.sleep(delay.toMillis());
+            }
+            lastId = ids.get(ids.size() - 1);
+        }
+
+        deleted.add(fileSystemStorage.deleteUnusedFiles(writtenBefore));
+        synchronized (stats) {
+            stats.add(deleted);
+        }
+        return deleted;
+    }
+
+    // total numbers of images and files deleted since the server started
+    public ImageGarbageCollectionStats getStats() {
+        synchronized (stats) {
+            return new ImageGarbageCollectionStats(stats.getRuns(), stats.getImages(), stats.getFiles(), stats.getBytes());
+        }
+    }
+
+    private Set<Long> findReferencedImageIds() throws InterruptedException {
+        Set<Long> referencedIds = new HashSet<>();
+        Long lastId = 0L;
+        List<CaseStudy> caseStudies;
+        while (!(caseStudies = caseStudyMapper.findImageReferences(lastId, batchSize)).isEmpty()) {
+            for (CaseStudy caseStudy : caseStudies) {
+                if (caseStudy.getClientLogoId() != null) referencedIds.add(caseStudy.getClientLogoId());
+                referencedIds.addAll(CaseStudyService.countStoredImages(CaseStudyService.getRichTextFields(caseStudy)).keySet());
+            }
+            lastId = caseStudies.get(caseStudies.size() - 1).getCaseStudyId();
+            Thread.sleep(delay.toMillis());
+        }
+        return referencedIds;
+    }
+}
@@ -0,0 +1,99 @@
+package spe.projectportfolio.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import spe.projectportfolio.backend.mapper.ImageMapper;
+import spe.projectportfolio.backend.pojo.Image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// makes images smaller in the background after they are uploaded, by scaling them down to fit within the maximum
+// dimension and re-encoding them without metadata (e.g. EXIF), keeping the new data only if it is smaller
+//
+// images are optimized on a few threads after the transaction storing them commits, and if too many images are waiting
+// to be optimized, new ones are left as they are, so that uploads are never slowed down by optimization
+@Slf4j
+@Component
+public class ImageOptimizer {
+    private final ImageMapper imageMapper;
+    private final ImageService imageService;
+    private final int maxDimension;
+    private final int jpegQuality;
+    private final long maxPixels;
+    private final ThreadPoolExecutor executor;
+
+    public ImageOptimizer(ImageMapper imageMapper,
+                          ImageService imageService,
+                          @Value("${app.image-optimizer.threads}") int threads,
+                          @Value("${app.image-optimizer.queue-size}") int queueSize,
+                          @Value("${app.image-optimizer.max-dimension}") int maxDimension,
+                          @Value("${app.image-optimizer.jpeg-quality}") int jpegQuality,
+                          @Value("${app.image-optimizer.max-pixels}") long maxPixels) {
+        this.imageMapper = imageMapper;
+        this.imageService = imageService;
+        this.maxDimension = maxDimension;
+        this.jpegQuality = jpegQuality;
+        this.maxPixels = maxPixels;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("image-optimizer-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), threadFactory);
+    }
+
+    // images stored outside a transaction are optimized straight away
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onImageStored(ImageStoredEvent event) {
+        Long id = event.getImageId();
+        try {
+            executor.execute(() -> {
+                try {
+                    optimize(id);
+                } catch (Exception e) {
+                    log.warn("Failed to optimize image {}", id, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Too many images are waiting to be optimized, so image {} will not be optimized", id);
+        }
+    }
+
+    // optimize an image, returning true if it was made smaller
+    //
+    // images which can't be read (or are too large to decode) are left as they are, and each image is only optimized
+    // once, since optimizing it again would only make it worse
+    public boolean optimize(Long id) throws IOException {
+        Image metadata = imageMapper.findMetadataById(id);
+        if (metadata == null || metadata.getHash() == null || metadata.getOriginalSize() != null) return false;
+
+        byte[] data = imageService.readData(metadata);
+        byte[] optimized;
+        try {
+            BufferedImage image = ImageCodec.read(data, maxPixels, maxDimension, maxDimension);
+            BufferedImage scaled = ImageCodec.scale(image, maxDimension, maxDimension, metadata.getType());
+            optimized = ImageCodec.encode(scaled, metadata.getType(), jpegQuality);
+        } catch (IllegalArgumentException e) {
+            optimized = null;
+        }
+
+        if (optimized == null || optimized.length >= data.length) {
+            imageMapper.markOptimized(id);
+            return false;
+        }
+        return imageService.replaceOptimized(metadata, optimized);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,12 @@
+package spe.projectportfolio.backend.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// published when the data of a stored image is replaced, which may change its dimensions and placeholder (see
+// CaseStudyService.onImageReplaced)
+@Data
+@AllArgsConstructor
+public class ImageReplacedEvent {
+    private Long imageId;
+}
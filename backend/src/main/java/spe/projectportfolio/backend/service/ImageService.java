@@ -0,0 +1,394 @@
+package spe.projectportfolio.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import spe.projectportfolio.backend.mapper.ImageMapper;
+import spe.projectportfolio.backend.mapper.ImageVariantMapper;
+import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.enums.ImageStorageType;
+import spe.projectportfolio.backend.pojo.enums.ImageType;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// stores images by the hash of their data, so that an image which is uploaded several times (e.g. the same client logo
+// for several case studies) is only stored once, and counts references to each image so that it is only deleted when
+// nothing refers to it anymore
+//
+// new images are stored in the configured storage (see ImageStorage), but images can be read from either storage, so
+// that images stored before the storage was changed can still be read until they are moved (see ImageStorageMigration)
+@Service
+public class ImageService {
+    // length of the Placeholder column
+    public static final int MAX_PLACEHOLDER_LENGTH = 2048;
+
+    private final ImageMapper imageMapper;
+    private final ImageBatchInserter imageBatchInserter;
+    private final DatabaseImageStorage databaseStorage;
+    private final FileSystemImageStorage fileSystemStorage;
+    private final ImageStorage storage;
+    private final ImageCache imageCache;
+    private final ImageVariantMapper imageVariantMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int placeholderSize;
+    private final long maxPlaceholderSourcePixels;
+
+    public ImageService(ImageMapper imageMapper,
+                        ImageBatchInserter imageBatchInserter,
+                        DatabaseImageStorage databaseStorage,
+                        FileSystemImageStorage fileSystemStorage,
+                        @Value("${app.image-storage.type}") ImageStorageType storageType,
+                        ImageCache imageCache,
+                        ImageVariantMapper imageVariantMapper,
+                        ApplicationEventPublisher eventPublisher,
+                        @Value("${app.image-placeholders.size}") int placeholderSize,
+                        @Value("${app.image-placeholders.max-source-pixels}") long maxPlaceholderSourcePixels) {
+        this.imageMapper = imageMapper;
+        this.imageBatchInserter = imageBatchInserter;
+        this.databaseStorage = databaseStorage;
+        this.fileSystemStorage = fileSystemStorage;
+        this.storage = storageType == ImageStorageType.FILESYSTEM ? fileSystemStorage : databaseStorage;
+        this.imageCache = imageCache;
+        this.imageVariantMapper = imageVariantMapper;
+        this.eventPublisher = eventPublisher;
+        this.placeholderSize = placeholderSize;
+        this.maxPlaceholderSourcePixels = maxPlaceholderSourcePixels;
+    }
+
+    // add a reference to an image with the data of the given image, inserting it if there isn't one already, and set
+    // the ID of the given image to the ID of the stored one
+    public Long store(Image image) {
+        image.setHash(hash(image));
+
+        Long existingId = imageMapper.findIdByHash(image.getHash());
+        if (existingId == null) {
+            try {
+                describe(image);
+                save(image);
+                imageMapper.insert(image);
+                eventPublisher.publishEvent(new ImageStoredEvent(image.getImageId()));
+                return image.getImageId();
+            } catch (DuplicateKeyException e) {
+                // the same image was inserted at the same time by another request, so refer to that one instead
+                existingId = imageMapper.findIdByHash(image.getHash());
+                if (existingId == null) throw e;
+            }
+        }
+
+        imageMapper.addReference(existingId);
+        image.setImageId(existingId);
+        return existingId;
+    }
+
+    // store several images at once (see store), finding the ones which are already stored in one query and inserting
+    // the rest in one batch
+    public void storeAll(Collection<Image> images) {
+        if (images.isEmpty()) return;
+        images.forEach(image -> image.setHash(hash(image)));
+
+        Map<String, Image> storedImages = new HashMap<>();
+        List<String> hashes = images.stream().map(Image::getHash).distinct().toList();
+        for (Image stored : imageMapper.findByHashes(hashes)) {
+            storedImages.put(stored.getHash(), stored);
+            if (stored.getOriginalHash() != null) storedImages.put(stored.getOriginalHash(), stored);
+        }
+
+        // images which are not stored yet are inserted once each (even if they are in images several times), using
+        // copies of them so that they can still be stored one at a time if inserting them fails
+        Map<String, Image> newImages = new LinkedHashMap<>();
+        for (Image image : images) {
+            if (storedImages.containsKey(image.getHash()) || newImages.containsKey(image.getHash())) continue;
+            Image copy = new Image(null, image.getData(), image.getType());
+            copy.setFile(image.getFile());
+            copy.setHash(image.getHash());
+            describe(copy);
+            save(copy);
+            newImages.put(image.getHash(), copy);
+        }
+        if (!newImages.isEmpty()) {
+            try {
+                imageBatchInserter.insertAll(newImages.values());
+            } catch (DuplicateKeyException e) {
+                // some of the images were inserted at the same time by another request, so store them one at a time
+                // instead, which refers to those ones
+                images.forEach(this::store);
+                return;
+            }
+            for (Image image : newImages.values()) {
+                storedImages.put(image.getHash(), image);
+                eventPublisher.publishEvent(new ImageStoredEvent(image.getImageId()));
+            }
+        }
+
+        // each inserted image already has one reference, and every other image adds a reference
+        Map<Long, Integer> references = new HashMap<>();
+        for (Image image : images) {
+            Image stored = storedImages.get(image.getHash());
+            if (newImages.remove(image.getHash()) == null) references.merge(stored.getImageId(), 1, Integer::sum);
+            image.setImageId(stored.getImageId());
+            image.setWidth(stored.getWidth());
+            image.setHeight(stored.getHeight());
+            image.setPlaceholder(stored.getPlaceholder());
+        }
+        addReferences(references);
+    }
+
+    // replace the data of a stored image, which changes it for everything referring to it
+    //
+    // the image is locked until the end of the transaction, so that it can't be replaced (or optimized) by another
+    // request at the same time
+    @Transactional
+    public void replace(Image image) {
+        Image old = imageMapper.findMetadataByIdForUpdate(image.getImageId());
+
+        // if another image already has the same data, this one keeps no hash so that the hash stays unique (so it will
+        // not be shared with new images)
+        String hash = hash(image);
+        Long existingId = imageMapper.findIdByHash(hash);
+        image.setHash(existingId == null || existingId.equals(image.getImageId()) ? hash : null);
+
+        describe(image);
+        save(image);
+        try {
+            imageMapper.update(image);
+        } catch (DuplicateKeyException e) {
+            // an image with the same data was stored at the same time by another request, so this one keeps no hash
+            if (image.getHash() == null) throw e;
+            image.setHash(null);
+            imageMapper.update(image);
+        }
+        imageCache.invalidate(image.getImageId());
+        imageVariantMapper.deleteByImageId(image.getImageId());
+        if (old != null && !Objects.equals(old.getPath(), image.getPath())) {
+            getStorage(old).delete(old);
+        }
+        eventPublisher.publishEvent(new ImageStoredEvent(image.getImageId()));
+        eventPublisher.publishEvent(new ImageReplacedEvent(image.getImageId()));
+    }
+
+    // replace the data of an image with an optimized version of it (see ImageOptimizer), returning false if the image
+    // has been replaced since its metadata was found
+    //
+    // the image keeps its original hash too, so uploading the original data again refers to the optimized image
+    @Transactional
+    public boolean replaceOptimized(Image metadata, byte[] data) {
+        Long id = metadata.getImageId();
+        Image current = imageMapper.findMetadataByIdForUpdate(id);
+        if (current == null || current.getOriginalSize() != null || !Objects.equals(current.getHash(), metadata.getHash())) {
+            return false;
+        }
+
+        // if another image already has the same data as the optimized image, the hash would not be unique
+        Image optimized = new Image(id, data, current.getType());
+        optimized.setHash(hash(data));
+        if (imageMapper.findIdByHash(optimized.getHash()) != null) {
+            imageMapper.markOptimized(id);
+            return false;
+        }
+
+        describe(optimized);
+        save(optimized);
+        imageMapper.updateOptimized(optimized, current.getHash(), current.getSize());
+        imageCache.invalidate(id);
+        imageVariantMapper.deleteByImageId(id);
+        if (!Objects.equals(current.getPath(), optimized.getPath())) {
+            getStorage(current).delete(current);
+        }
+        eventPublisher.publishEvent(new ImageReplacedEvent(id));
+        return true;
+    }
+
+    // add references to several images at once, where references maps image IDs to the number of references to add
+    public void addReferences(Map<Long, Integer> references) {
+        if (!references.isEmpty()) imageMapper.addReferences(references);
+    }
+
+    // remove a reference to an image, deleting it if it was the last one
+    public void release(Long id) {
+        releaseAll(Map.of(id, 1));
+    }
+
+    // remove references to several images at once (see addReferences), deleting the ones with no references left in
+    // one statement
+    //
+    // updating the reference counts locks the images until the end of the transaction, so they can't be referred to
+    // again before they are deleted
+    public void releaseAll(Map<Long, Integer> references) {
+        if (references.isEmpty()) return;
+        imageMapper.removeReferences(references);
+        List<Image> unreferenced = imageMapper.findUnreferencedByIds(references.keySet());
+        if (unreferenced.isEmpty()) return;
+
+        imageMapper.deleteByIds(unreferenced.stream().map(Image::getImageId).toList());
+        for (Image metadata : unreferenced) {
+            imageCache.invalidate(metadata.getImageId());
+            getStorage(metadata).delete(metadata);
+        }
+    }
+
+    // delete the images with the given IDs which have not been referenced since the given time, whatever their reference
+    // counts are (see ImageGarbageCollector), returning the deleted images without their data
+    //
+    // the images are locked while they are deleted, so that an image which is referenced again at the same time is
+    // not deleted
+    @Transactional
+    public List<Image> deleteUnused(Collection<Long> ids, LocalDateTime referencedBefore) {
+        List<Image> unused = imageMapper.findReferencedBeforeByIdsForUpdate(ids, referencedBefore);
+        if (unused.isEmpty()) return unused;
+
+        imageMapper.deleteByIds(unused.stream().map(Image::getImageId).toList());
+        for (Image metadata : unused) {
+            imageCache.invalidate(metadata.getImageId());
+            getStorage(metadata).delete(metadata);
+        }
+        return unused;
+    }
+
+    // get the metadata (without data) of the images with the given IDs, e.g. to get the dimensions of images linked to
+    // from rich text fields
+    public List<Image> getMetadata(Collection<Long> ids) {
+        if (ids.isEmpty()) return new ArrayList<>();
+        return imageMapper.findByIds(ids, 0);
+    }
+
+    // copy the data of an image (found using ImageMapper.findMetadataById) to out
+    //
+    // this is done in a read-only transaction so that data read in several parts all comes from the same version of the
+    // image, and if the image has been replaced or deleted since its metadata was found, IOException is thrown since
+    // its size may have changed
+    @Transactional(readOnly = true)
+    public void copyData(Image metadata, OutputStream out) throws IOException {
+        copyData(metadata, 0, metadata.getSize(), out);
+    }
+
+    // copy length bytes of the data of an image starting at offset (from 0) to out (see copyData), without reading the
+    // rest of it
+    @Transactional(readOnly = true)
+    public void copyData(Image metadata, long offset, long length, OutputStream out) throws IOException {
+        Image current = imageMapper.findMetadataById(metadata.getImageId());
+        if (current == null || !Objects.equals(current.getHash(), metadata.getHash()) || !Objects.equals(current.getSize(), metadata.getSize())
+                || !Objects.equals(current.getPath(), metadata.getPath())) {
+            throw new IOException("Image " + metadata.getImageId() + " changed while it was being read");
+        }
+        getStorage(metadata).copy(metadata, offset, length, out);
+    }
+
+    // read the data of an image (found using ImageMapper.findMetadataById) into memory, for images which are small
+    // enough to be cached (see copyData)
+    @Transactional(readOnly = true)
+    public byte[] readData(Image metadata) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.toIntExact(metadata.getSize()));
+        copyData(metadata, out);
+        return out.toByteArray();
+    }
+
+    // get a value which changes whenever the data of an image (found using ImageMapper.findMetadataById) changes, for
+    // its ETag: the hash of its data, or its version if it is stored without a hash (before hashes were, or replaced
+    // with the same data as another image), so that the data never has to be read to find it
+    public static String getVersionTag(Image metadata) {
+        return metadata.getHash() != null ? metadata.getHash() : "v" + metadata.getVersion();
+    }
+
+    // get the file holding the data of an image (found using ImageMapper.findMetadataById), or null if it is not
+    // stored in a file
+    public Path getFile(Image metadata) {
+        return fileSystemStorage.contains(metadata) ? fileSystemStorage.getFile(metadata.getPath()) : null;
+    }
+
+    // move the data of an image from the Image table to a file, returning false if it is not in the Image table
+    //
+    // the image is locked while its data is copied, so that it can't be replaced at the same time
+    @Transactional
+    public boolean moveToFileSystem(Long id) throws IOException {
+        Image metadata = imageMapper.findMetadataByIdForUpdate(id);
+        if (metadata == null || !databaseStorage.contains(metadata)) return false;
+        String path = fileSystemStorage.saveFrom(databaseStorage, metadata);
+        imageMapper.moveData(id, path, metadata.getSize());
+        return true;
+    }
+
+    // get the hex SHA-256 hash of image data
+    public static String hash(byte[] data) {
+        return HexFormat.of().formatHex(createDigest().digest(data));
+    }
+
+    // get the hex SHA-256 hash of the data of an image which is being stored, from its file if it has one
+    private static String hash(Image image) {
+        if (image.getFile() == null) return hash(image.getData());
+        MessageDigest digest = createDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(image.getFile()), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // set the dimensions and placeholder of an image from its data, leaving them null if it can't be read (or the
+    // placeholder null if the image is too large to decode)
+    //
+    // any exception from reading the image is ignored (image readers can throw runtime exceptions for corrupt images),
+    // since images are stored even if they can't be read
+    private void describe(Image image) {
+        try {
+            Path file = image.getFile();
+            Dimension size = file != null ? ImageCodec.getSize(file) : ImageCodec.getSize(image.getData());
+            image.setWidth(size.width);
+            image.setHeight(size.height);
+
+            BufferedImage decoded = file != null
+                    ? ImageCodec.read(file, maxPlaceholderSourcePixels, placeholderSize, placeholderSize)
+                    : ImageCodec.read(image.getData(), maxPlaceholderSourcePixels, placeholderSize, placeholderSize);
+            BufferedImage scaled = ImageCodec.scale(decoded, placeholderSize, placeholderSize, ImageType.PNG);
+            String placeholder = "data:image/png;base64," + Base64.getEncoder().encodeToString(ImageCodec.encode(scaled, ImageType.PNG, 0));
+            if (placeholder.length() <= MAX_PLACEHOLDER_LENGTH) image.setPlaceholder(placeholder);
+        } catch (IOException | RuntimeException e) {
+            // the image can't be read, or is too large to decode
+        }
+    }
+
+    private void save(Image image) {
+        try {
+            image.setSize(image.getFile() != null ? Files.size(image.getFile()) : image.getData().length);
+            storage.save(image);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ImageStorage getStorage(Image metadata) {
+        return fileSystemStorage.contains(metadata) ? fileSystemStorage : databaseStorage;
+    }
+}
@@ -0,0 +1,28 @@
+package spe.projectportfolio.backend.service;
+
+import spe.projectportfolio.backend.pojo.Image;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// somewhere the data of images is kept (the Image table always holds the metadata of images, and which storage holds
+// the data of an image depends on whether it has a path)
+public interface ImageStorage {
+    // store the data of an image before it is inserted or updated, either leaving it in the image to be stored in the
+    // Image table, or storing it elsewhere, setting the path of the image and clearing its data
+    void save(Image image) throws IOException;
+
+    // check if the data of an image (found using ImageMapper.findMetadataById) is kept in this storage
+    boolean contains(Image metadata);
+
+    // copy the data of an image (found using ImageMapper.findMetadataById) to out
+    default void copy(Image metadata, OutputStream out) throws IOException {
+        copy(metadata, 0, metadata.getSize(), out);
+    }
+
+    // copy length bytes of the data of an image starting at offset (from 0) to out, without reading the rest of it
+    void copy(Image metadata, long offset, long length, OutputStream out) throws IOException;
+
+    // delete the data of an image which has been deleted or replaced, once its transaction has been committed
+    void delete(Image metadata);
+}
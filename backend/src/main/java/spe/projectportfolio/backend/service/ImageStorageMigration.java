@@ -0,0 +1,81 @@
+package spe.projectportfolio.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import spe.projectportfolio.backend.mapper.ImageMapper;
+import spe.projectportfolio.backend.pojo.enums.ImageStorageType;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+// background job which moves the data of images stored in the Image table (from before images were stored in files)
+// to files, when images are stored in files
+//
+// it runs in its own thread after startup, pausing after each image so that it doesn't compete with requests for the
+// database, and does nothing once every image has been moved
+@Slf4j
+@Component
+public class ImageStorageMigration {
+    private final ImageMapper imageMapper;
+    private final ImageService imageService;
+    private final ImageStorageType storageType;
+    private final int batchSize;
+    private final Duration delay;
+
+    public ImageStorageMigration(ImageMapper imageMapper,
+                                 ImageService imageService,
+                                 @Value("${app.image-storage.type}") ImageStorageType storageType,
+                                 @Value("${app.image-storage.migration.batch-size}") int batchSize,
+                                 @Value("${app.image-storage.migration.delay}") Duration delay) {
+        this.imageMapper = imageMapper;
+        this.imageService = imageService;
+        this.storageType = storageType;
+        this.batchSize = batchSize;
+        this.delay = delay;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (storageType != ImageStorageType.FILESYSTEM) return;
+        Thread thread = new Thread(this::migrateInBackground, "image-storage-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void migrateInBackground() {
+        try {
+            int moved = migrate();
+            if (moved > 0) log.info("Moved {} images from the database to files", moved);
+        } catch (DataAccessException e) {
+            log.warn("Could not move images from the database to files: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // move every image in the Image table to a file, returning how many were moved
+    //
+    // images which can't be moved are skipped, so that one bad image doesn't stop the rest from being moved
+    public int migrate() throws InterruptedException {
+        int moved = 0;
+        Long lastId = 0L;
+        List<Long> ids;
+        while (!(ids = imageMapper.findIdsWithData(lastId, batchSize)).isEmpty()) {
+            for (Long id : ids) {
+                try {
+                    if (imageService.moveToFileSystem(id)) moved++;
+                } catch (IOException e) {
+                    log.warn("Could not move image {} to a file: {}", id, e.getMessage());
+                }
+                Thread.sleep(delay.toMillis());
+            }
+            lastId = ids.get(ids.size() - 1);
+        }
+        return moved;
+    }
+}
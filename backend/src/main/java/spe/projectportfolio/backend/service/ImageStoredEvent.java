@@ -0,0 +1,11 @@
+package spe.projectportfolio.backend.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// published when new image data is stored (see ImageOptimizer)
+@Data
+@AllArgsConstructor
+public class ImageStoredEvent {
+    private Long imageId;
+}
@@ -0,0 +1,104 @@
+package spe.projectportfolio.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import spe.projectportfolio.backend.mapper.ImageVariantMapper;
+import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.ImageVariant;
+import spe.projectportfolio.backend.pojo.enums.ImageType;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+// makes resized versions of images (e.g. thumbnails of client logos), which are made the first time they are requested
+// and stored in the ImageVariant table
+//
+// only the configured sizes and qualities can be requested, and only a few variants are made at once, so that making
+// variants can't use up the CPU of the server
+@Service
+public class ImageVariantService {
+    private final ImageVariantMapper imageVariantMapper;
+    private final ImageService imageService;
+    private final List<Integer> sizes;
+    private final List<Integer> qualities;
+    private final int defaultQuality;
+    private final long maxSourcePixels;
+    private final Semaphore permits;
+
+    public ImageVariantService(ImageVariantMapper imageVariantMapper,
+                               ImageService imageService,
+                               @Value("${app.image-variants.sizes}") List<Integer> sizes,
+                               @Value("${app.image-variants.qualities}") List<Integer> qualities,
+                               @Value("${app.image-variants.default-quality}") int defaultQuality,
+                               @Value("${app.image-variants.max-source-pixels}") long maxSourcePixels,
+                               @Value("${app.image-variants.max-concurrent}") int maxConcurrent) {
+        this.imageVariantMapper = imageVariantMapper;
+        this.imageService = imageService;
+        this.sizes = sizes;
+        this.qualities = qualities;
+        this.defaultQuality = defaultQuality;
+        this.maxSourcePixels = maxSourcePixels;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    // get the variant of an image with the given size, type and quality (any of which can be null), throwing
+    // IllegalArgumentException if the size or quality is not allowed
+    //
+    // the variant has no data, and the type is the type of the image if it is not given
+    public ImageVariant getVariant(Image metadata, Integer width, Integer height, ImageType type, Integer quality) {
+        if (width == null && height == null) throw new IllegalArgumentException("Width or height must be given");
+        if (width != null && !sizes.contains(width)) throw new IllegalArgumentException("Width is not allowed");
+        if (height != null && !sizes.contains(height)) throw new IllegalArgumentException("Height is not allowed");
+
+        ImageType variantType = type != null ? type : metadata.getType();
+        int variantQuality = 0;
+        if (variantType == ImageType.JPEG) {
+            variantQuality = quality != null ? quality : defaultQuality;
+            if (!qualities.contains(variantQuality)) throw new IllegalArgumentException("Quality is not allowed");
+        } else if (quality != null) {
+            throw new IllegalArgumentException("Quality can only be given for JPEG images");
+        }
+
+        return new ImageVariant(metadata.getImageId(), width != null ? width : 0, height != null ? height : 0, variantType, variantQuality, null);
+    }
+
+    // get the data of a variant (from getVariant), making it if it hasn't been made already, throwing
+    // IllegalArgumentException if the image can't be read
+    public byte[] getData(Image metadata, ImageVariant variant) throws IOException {
+        ImageVariant stored = imageVariantMapper.find(variant);
+        if (stored != null) return stored.getData();
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to resize image");
+        }
+        try {
+            // another request could have made the variant while this one was waiting
+            stored = imageVariantMapper.find(variant);
+            if (stored != null) return stored.getData();
+
+            byte[] data = resize(imageService.readData(metadata), variant);
+            variant.setData(data);
+            try {
+                imageVariantMapper.insert(variant);
+            } catch (DuplicateKeyException e) {
+                // the same variant was made at the same time by a request on another server
+            }
+            return data;
+        } finally {
+            permits.release();
+        }
+    }
+
+    private byte[] resize(byte[] imageData, ImageVariant variant) throws IOException {
+        BufferedImage image = ImageCodec.read(imageData, maxSourcePixels, variant.getWidth(), variant.getHeight());
+        BufferedImage resized = ImageCodec.scale(image, variant.getWidth(), variant.getHeight(), variant.getType());
+        return ImageCodec.encode(resized, variant.getType(), variant.getQuality());
+    }
+}
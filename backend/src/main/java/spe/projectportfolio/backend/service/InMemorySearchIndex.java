@@ -0,0 +1,179 @@
+package spe.projectportfolio.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// base of the in-memory search indexes (see CaseStudySearchIndex and UserSearchIndex), which keeps an index in line
+// with the database
+//
+// the index is updated as soon as the database is, and is rebuilt from the database on startup and in the background
+// (on a schedule, or once it is stale) so that changes made on other servers (or directly in the database) are
+// eventually seen
+//
+// the database is read without holding the lock, so changes made while it is being read (and changes in transactions
+// which hadn't finished when it started, which it may not see) are applied again to the rebuilt index before it is
+// used, and if a transaction which changed the index is rolled back, the index is stale until it is next rebuilt
+@Slf4j
+public abstract class InMemorySearchIndex<T> {
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // held while the index is rebuilt, so that only one rebuild runs at a time
+    private final Object rebuildLock = new Object();
+
+    // set when the index may no longer match the database
+    private volatile boolean stale = true;
+
+    // the following are only used with the write lock held
+    private long rollbacks = 0;
+    private boolean rebuilding = false;
+    private final List<Change<T>> changesDuringRebuild = new ArrayList<>();
+    private final Set<Change<T>> uncommittedChanges = new LinkedHashSet<>();
+
+    // load every item from the database
+    protected abstract List<T> loadAll();
+
+    protected abstract Long getId(T item);
+
+    // add an item which isn't in the index
+    protected abstract void addToIndex(T item);
+
+    // remove an item from the index, if it is in it
+    protected abstract void removeFromIndex(Long id);
+
+    // remove every item from the index
+    protected abstract void clearIndex();
+
+    // rebuild the whole index from the database
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long rollbacksBefore;
+            lock.writeLock().lock();
+            try {
+                rebuilding = true;
+                changesDuringRebuild.addAll(uncommittedChanges);
+                rollbacksBefore = rollbacks;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            List<T> items;
+            try {
+                items = loadAll();
+            } catch (RuntimeException e) {
+                // the current index is kept
+                lock.writeLock().lock();
+                try {
+                    rebuilding = false;
+                    changesDuringRebuild.clear();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+
+            lock.writeLock().lock();
+            try {
+                clearIndex();
+                items.forEach(this::addToIndex);
+                changesDuringRebuild.forEach(this::apply);
+                changesDuringRebuild.clear();
+                rebuilding = false;
+                // a change which was rolled back while the database was being read has just been applied again
+                stale = rollbacks != rollbacksBefore;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // check if the index may no longer match the database (until it is next rebuilt)
+    public boolean isStale() {
+        return stale;
+    }
+
+    // add or replace the entry for an item
+    public void index(T item) {
+        change(new Change<>(getId(item), item));
+    }
+
+    // remove the entry for an item
+    public void remove(Long id) {
+        change(new Change<>(id, null));
+    }
+
+    // mark the index as stale, e.g. when changes made on other servers may have been missed (counted as a rollback, so
+    // that a rebuild which is already running, and may not see those changes, also leaves it stale)
+    protected void markStale() {
+        lock.writeLock().lock();
+        try {
+            rollbacks++;
+            stale = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // rebuild the index on startup or on a schedule, logging rather than throwing if the database can't be read
+    protected void tryRebuild() {
+        try {
+            rebuild();
+        } catch (DataAccessException e) {
+            log.warn("Could not rebuild {}: {}", getClass().getSimpleName(), e.getMessage());
+        }
+    }
+
+    private void change(Change<T> change) {
+        boolean inTransaction = TransactionSynchronizationManager.isSynchronizationActive();
+        lock.writeLock().lock();
+        try {
+            apply(change);
+            if (rebuilding) changesDuringRebuild.add(change);
+            if (inTransaction) uncommittedChanges.add(change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!inTransaction) return;
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.writeLock().lock();
+                try {
+                    uncommittedChanges.remove(change);
+                    if (status != STATUS_COMMITTED) {
+                        rollbacks++;
+                        stale = true;
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        });
+    }
+
+    private void apply(Change<T> change) {
+        removeFromIndex(change.id);
+        if (change.item != null) addToIndex(change.item);
+    }
+
+    // an item which was indexed, or removed if item is null (compared by identity, so that the same change can be
+    // found again once its transaction has finished)
+    private static final class Change<T> {
+        private final Long id;
+        private final T item;
+
+        private Change(Long id, T item) {
+            this.id = id;
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package spe.projectportfolio.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// subscriptions to Redis channels which every server listens on (see CaseStudyCache and UserEmailFilter)
+//
+// Redis may not be reachable when the server starts, so subscribing is retried on a schedule until it is (after which
+// the subscriptions are recovered by the container if the connection is lost), and messages sent before then are
+// missed, so each subscriber is told once it has subscribed
+@Slf4j
+@Component
+public class RedisSubscriptions {
+    private final RedisConnectionFactory connectionFactory;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+
+    // null until Redis has been reached
+    private RedisMessageListenerContainer listenerContainer;
+
+    public RedisSubscriptions(RedisConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    // subscribe to a channel, calling onSubscribed (which should recover from any messages it missed) once subscribed
+    //
+    // this must be called before the server has started
+    public synchronized void subscribe(String channel, MessageListener listener, Runnable onSubscribed) {
+        subscriptions.add(new Subscription(channel, listener, onSubscribed));
+    }
+
+    @Scheduled(fixedDelayString = "${app.redis-subscriptions.retry-interval}")
+    public synchronized void start() {
+        if (subscriptions.isEmpty() || listenerContainer != null) return;
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        subscriptions.forEach(subscription -> container.addMessageListener(subscription.listener, new ChannelTopic(subscription.channel)));
+        try {
+            container.afterPropertiesSet();
+            container.start();
+        } catch (RuntimeException e) {
+            log.warn("Could not subscribe to Redis channels: {}", e.getMessage());
+            destroy(container);
+            return;
+        }
+        listenerContainer = container;
+        subscriptions.forEach(subscription -> subscription.onSubscribed.run());
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (listenerContainer != null) destroy(listenerContainer);
+        listenerContainer = null;
+    }
+
+    private static void destroy(RedisMessageListenerContainer container) {
+        try {
+            container.destroy();
+        } catch (Exception e) {
+            log.warn("Could not stop subscriptions to Redis channels: {}", e.getMessage());
+        }
+    }
+
+    private static final class Subscription {
+        private final String channel;
+        private final MessageListener listener;
+        private final Runnable onSubscribed;
+
+        private Subscription(String channel, MessageListener listener, Runnable onSubscribed) {
+            this.channel = channel;
+            this.listener = listener;
+            this.onSubscribed = onSubscribed;
+        }
+    }
+}
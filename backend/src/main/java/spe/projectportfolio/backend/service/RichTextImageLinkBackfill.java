@@ -0,0 +1,67 @@
+package spe.projectportfolio.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import spe.projectportfolio.backend.mapper.CaseStudyMapper;
+import spe.projectportfolio.backend.pojo.CaseStudy;
+
+import java.util.regex.Pattern;
+
+// one-off job which converts the rich text fields of case studies stored before image links were stored in them
+// (where the src of each image is just its ID) to image links, so that they can be returned as they are stored
+//
+// it runs on startup, and once every case study has been converted, it only runs a query which finds none
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class RichTextImageLinkBackfill {
+    // rich text fields are always serialised by Jsoup with src as the only attribute of images, so images with just an
+    // ID can be found without parsing the HTML
+    private static final Pattern IMAGE_ID_SRC = Pattern.compile("<img src=\"(\\d+)\">");
+
+    private final CaseStudyMapper caseStudyMapper;
+    private final CaseStudyCache caseStudyCache;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        try {
+            int converted = backfill();
+            if (converted > 0) log.info("Converted image IDs to image links in {} case studies", converted);
+        } catch (DataAccessException e) {
+            log.warn("Could not convert image IDs to image links in case studies: {}", e.getMessage());
+        }
+    }
+
+    // convert every case study with image IDs in its rich text fields, returning how many were converted
+    public int backfill() {
+        int converted = 0;
+        for (CaseStudy caseStudy : caseStudyMapper.findWithRichTextImageIds()) {
+            // only the converted fields are updated, so that nothing else is overwritten if it is being edited
+            CaseStudy update = new CaseStudy();
+            update.setCaseStudyId(caseStudy.getCaseStudyId());
+            update.setProblemDescription(convertImageIds(caseStudy.getProblemDescription()));
+            update.setSolutionDescription(convertImageIds(caseStudy.getSolutionDescription()));
+            update.setOutcomes(convertImageIds(caseStudy.getOutcomes()));
+            update.setToolsUsed(convertImageIds(caseStudy.getToolsUsed()));
+            update.setProjectLearnings(convertImageIds(caseStudy.getProjectLearnings()));
+            if (update.getProblemDescription() == null && update.getSolutionDescription() == null && update.getOutcomes() == null
+                    && update.getToolsUsed() == null && update.getProjectLearnings() == null) continue;
+
+            caseStudyMapper.update(update);
+            caseStudyCache.invalidate(caseStudy.getCaseStudyId());
+            converted++;
+        }
+        return converted;
+    }
+
+    // get the field with image IDs replaced by image links, or null if there is nothing to convert
+    private static String convertImageIds(String field) {
+        if (field == null) return null;
+        String converted = IMAGE_ID_SRC.matcher(field).replaceAll("<img src=\"" + CaseStudyService.IMAGE_PATH + "$1\">");
+        return converted.equals(field) ? null : converted;
+    }
+}
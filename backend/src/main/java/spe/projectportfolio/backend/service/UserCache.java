@@ -0,0 +1,147 @@
+package spe.projectportfolio.backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import spe.projectportfolio.backend.pojo.User;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// read-through cache of users by email and by ID, kept in memory on each server, so that the details of the current
+// user (which the frontend gets on every page) don't have to be loaded from the database
+//
+// users are only removed from the cache on the server which changed them, so other servers can return the old details
+// until they expire, which is why logging in never uses the cache (see CustomUserDetailsService)
+//
+// users are cached without their password hashes (which are only needed to log in), and every get returns a copy of
+// the cached user so that callers can modify it
+@Component
+public class UserCache {
+    private final Cache<String, User> usersByEmail;
+    private final Cache<Long, User> usersById;
+
+    // user ID -> emails it is cached under in usersByEmail, so that evict can remove them without checking every user
+    // (each set is only modified inside compute, so that it is never modified after being removed)
+    private final Map<Long, Set<String>> emailsById = new ConcurrentHashMap<>();
+
+    // incremented whenever a user is removed, so that a user loaded before it was modified is not cached after
+    private long generation = 0;
+
+    public UserCache(@Value("${app.user-cache.max-size}") long maxSize,
+                     @Value("${app.user-cache.expire-after}") Duration expireAfter) {
+        this.usersByEmail = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfter)
+                .evictionListener((String email, User user, RemovalCause cause) -> {
+                    if (user != null) removeEmail(user.getUserId(), email);
+                })
+                .build();
+        this.usersById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfter)
+                .build();
+    }
+
+    // get a user by email from the cache, or load it using the loader if it is not cached (returns null if the loader
+    // does, which is not cached)
+    public User getByEmail(String email, Function<String, User> loader) {
+        return copy(get(usersByEmail, email, loader));
+    }
+
+    // get a user by ID from the cache (see getByEmail)
+    public User getById(Long id, Function<Long, User> loader) {
+        return copy(get(usersById, id, loader));
+    }
+
+    // remove a user from the cache, which must be done whenever it is inserted, modified or deleted
+    public void invalidate(Long id) {
+        evict(id);
+
+        // a request could load the old user again before the transaction modifying it is committed, so it is removed
+        // again after the commit
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(id);
+                }
+            });
+        }
+    }
+
+    private synchronized void evict(Long id) {
+        generation++;
+        usersById.invalidate(id);
+        // the user may be cached under more than one email (e.g. its old email, or the same email with different case
+        // if the database ignores case), so every entry for it is removed
+        Set<String> emails = emailsById.remove(id);
+        if (emails != null) usersByEmail.invalidateAll(emails);
+    }
+
+    // the user is loaded without holding the lock, and only cached if no user was removed while it was being loaded
+    // (since it could be the old version of that user, and evict can't remove a user which isn't cached yet)
+    private <K> User get(Cache<K, User> cache, K key, Function<K, User> loader) {
+        User user = cache.getIfPresent(key);
+        if (user != null) return user;
+
+        long readGeneration;
+        synchronized (this) {
+            readGeneration = generation;
+        }
+        user = loader.apply(key);
+        if (user != null) put(cache, key, user, readGeneration);
+        return user;
+    }
+
+    // a user loaded in a transaction which is rolled back may not exist, so it is removed from the cache if it is
+    private synchronized <K> void put(Cache<K, User> cache, K key, User user, long readGeneration) {
+        if (readGeneration != generation) return;
+        User cached = copy(user);
+        // the email is recorded before the user is cached, so that it is never cached under an email evict can't find
+        if (cache == usersByEmail) addEmail(cached.getUserId(), (String) key);
+        cache.put(key, cached);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) return;
+                    synchronized (UserCache.this) {
+                        cache.invalidate(key);
+                        if (cache == usersByEmail) removeEmail(cached.getUserId(), (String) key);
+                    }
+                }
+            });
+        }
+    }
+
+    private void addEmail(Long id, String email) {
+        emailsById.compute(id, (key, emails) -> {
+            if (emails == null) emails = new HashSet<>();
+            emails.add(email);
+            return emails;
+        });
+    }
+
+    private void removeEmail(Long id, String email) {
+        emailsById.computeIfPresent(id, (key, emails) -> {
+            emails.remove(email);
+            return emails.isEmpty() ? null : emails;
+        });
+    }
+
+    // copy a user without its password
+    private static User copy(User user) {
+        if (user == null) return null;
+        return new User(user.getUserId(), user.getEmail(), user.getFirstName(), user.getLastName(), user.getRole(),
+                user.hasEditPermission(), user.isAdmin(), null);
+    }
+}
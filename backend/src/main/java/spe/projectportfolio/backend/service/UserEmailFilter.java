@@ -0,0 +1,245 @@
+package spe.projectportfolio.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import spe.projectportfolio.backend.mapper.UserMapper;
+import spe.projectportfolio.backend.pojo.User;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+// counting Bloom filter of the emails of every user, so that checking if an email is registered (which anyone can do)
+// only needs the database when the email might be registered
+//
+// the filter can only be wrong by saying an email might be registered when it isn't (which is then checked in the
+// database), so emails are added as soon as they are stored, but only removed once the removal has been committed,
+// and the filter is rebuilt from the database on a schedule so that it also has users added outside of UserService
+//
+// each server has its own filter, so emails added on one server are sent to the others using Redis pub/sub (see
+// RedisSubscriptions), and a server which misses them (e.g. while it can't reach Redis) says they are definitely not
+// registered until its filter is next rebuilt (so the filter is rebuilt whenever it subscribes, and on a schedule)
+//
+// counters are 8 bits, and a counter which reaches 255 is never decremented again (until the filter is rebuilt), so
+// that it can't be decremented below the number of emails in it
+@Slf4j
+@Component
+public class UserEmailFilter implements MessageListener {
+    public static final String ADDITION_CHANNEL = "userEmailAdditions";
+
+    private static final int MAX_COUNT = 255;
+
+    // messages start with the ID of the server sending them, so that servers can ignore their own emails
+    private final String serverId = UUID.randomUUID().toString();
+
+    private final UserMapper userMapper;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final boolean redisEnabled;
+    private final int size;
+    private final int hashCount;
+
+    private byte[] counters;
+    private boolean built = false;
+
+    // emails added while the filter is being rebuilt, which may not be in the users it is rebuilt from
+    private final List<String> addedDuringRebuild = new ArrayList<>();
+    private boolean rebuilding = false;
+    private final Object rebuildLock = new Object();
+
+    // incremented whenever a rebuild starts, so that emails removed in the database before a rebuild read the users are
+    // not also removed from the rebuilt filter (which doesn't have them)
+    private long generation = 0;
+
+    public UserEmailFilter(UserMapper userMapper,
+                           RedisTemplate<String, String> redisTemplate,
+                           RedisSubscriptions redisSubscriptions,
+                           @Value("${app.user-email-filter.expected-users}") int expectedUsers,
+                           @Value("${app.user-email-filter.false-positive-rate}") double falsePositiveRate,
+                           @Value("${app.user-email-filter.redis-enabled}") boolean redisEnabled) {
+        this.userMapper = userMapper;
+        this.redisTemplate = redisTemplate;
+        this.redisEnabled = redisEnabled;
+        // the optimal number of counters and hash functions for the expected number of emails
+        this.size = (int) Math.ceil(-expectedUsers * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.hashCount = Math.max(1, (int) Math.round((double) size / expectedUsers * Math.log(2)));
+        this.counters = new byte[size];
+        if (redisEnabled) redisSubscriptions.subscribe(ADDITION_CHANNEL, this, this::rebuildOnSchedule);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuildOnSchedule();
+    }
+
+    @Scheduled(initialDelayString = "${app.user-email-filter.rebuild-interval}", fixedDelayString = "${app.user-email-filter.rebuild-interval}")
+    public void rebuildOnSchedule() {
+        try {
+            rebuild();
+        } catch (DataAccessException e) {
+            // until the filter is built every email might be registered, so every check uses the database
+            log.warn("Could not build user email filter: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${app.user-email-filter.unbuilt-retry-interval}", fixedDelayString = "${app.user-email-filter.unbuilt-retry-interval}")
+    public void rebuildIfUnbuilt() {
+        boolean unbuilt;
+        synchronized (this) {
+            unbuilt = !built;
+        }
+        if (unbuilt) rebuildOnSchedule();
+    }
+
+    // rebuild the whole filter from the database
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                rebuilding = true;
+                generation++;
+                addedDuringRebuild.clear();
+            }
+            byte[] newCounters = new byte[size];
+            try {
+                for (User user : userMapper.findSearchFields()) {
+                    increment(newCounters, user.getEmail());
+                }
+            } catch (RuntimeException e) {
+                // the current filter is kept
+                synchronized (this) {
+                    rebuilding = false;
+                    addedDuringRebuild.clear();
+                }
+                throw e;
+            }
+            synchronized (this) {
+                addedDuringRebuild.forEach(email -> increment(newCounters, email));
+                addedDuringRebuild.clear();
+                rebuilding = false;
+                counters = newCounters;
+                built = true;
+            }
+        }
+    }
+
+    // false if the email is definitely not registered, or true if it might be
+    public synchronized boolean mightContain(String email) {
+        if (!built) return true;
+        long[] hashes = hash(email);
+        for (int i = 0; i < hashCount; i++) {
+            if (counters[index(hashes, i)] == 0) return false;
+        }
+        return true;
+    }
+
+    // add the email of a user which has been (or is about to be) stored, on every server
+    public void add(String email) {
+        addLocally(email);
+        if (!redisEnabled) return;
+        try {
+            redisTemplate.convertAndSend(ADDITION_CHANNEL, serverId + ":" + email);
+        } catch (DataAccessException e) {
+            log.warn("Could not send added user email to other servers: {}", e.getMessage());
+        }
+    }
+
+    // add an email added on another server
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":", 2);
+        if (parts.length == 2 && !parts[0].equals(serverId)) addLocally(parts[1]);
+    }
+
+    private synchronized void addLocally(String email) {
+        increment(counters, email);
+        if (rebuilding) addedDuringRebuild.add(email);
+    }
+
+    // remove the email of a user which has been deleted or has changed its email, once the change has been committed
+    //
+    // if the filter is rebuilt in the meantime the email is not removed, since the rebuilt filter may not have it
+    public void remove(String email) {
+        long removedGeneration;
+        synchronized (this) {
+            removedGeneration = generation;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            decrement(email, removedGeneration);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                decrement(email, removedGeneration);
+            }
+        });
+    }
+
+    // if any counter of the email is already 0, the email was never counted (e.g. it was added on another server which
+    // couldn't send it to this one), so decrementing its other counters could remove other emails from the filter
+    //
+    // none are decremented then, and the filter isn't used until it is rebuilt, since other emails may be missing too
+    private synchronized void decrement(String email, long removedGeneration) {
+        if (rebuilding || generation != removedGeneration || !built) return;
+        long[] hashes = hash(email);
+        int[] indexes = new int[hashCount];
+        for (int i = 0; i < hashCount; i++) {
+            indexes[i] = index(hashes, i);
+            if (counters[indexes[i]] == 0) {
+                log.warn("User email filter is missing a removed email, so it will be rebuilt");
+                built = false;
+                return;
+            }
+        }
+        for (int index : indexes) {
+            int count = Byte.toUnsignedInt(counters[index]);
+            if (count < MAX_COUNT) counters[index] = (byte) (count - 1);
+        }
+    }
+
+    private void increment(byte[] counters, String email) {
+        long[] hashes = hash(email);
+        for (int i = 0; i < hashCount; i++) {
+            int index = index(hashes, i);
+            int count = Byte.toUnsignedInt(counters[index]);
+            if (count < MAX_COUNT) counters[index] = (byte) (count + 1);
+        }
+    }
+
+    // the ith counter of an email, using double hashing to get every index from two hashes
+    private int index(long[] hashes, int i) {
+        return (int) Math.floorMod(hashes[0] + i * hashes[1], (long) size);
+    }
+
+    // two independent 64-bit hashes of an email, ignoring case (since the database may ignore it), using FNV-1a mixed
+    // with the finaliser of MurmurHash3
+    private static long[] hash(String email) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : email.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        long hash1 = mix(hash);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L) | 1; // odd, so that the indexes don't repeat early
+        return new long[]{hash1, hash2};
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53a6ed3L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,140 @@
+package spe.projectportfolio.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import spe.projectportfolio.backend.mapper.UserMapper;
+import spe.projectportfolio.backend.pojo.User;
+
+import java.util.*;
+
+// in-memory trigram index of the email, first name and last name of every user, used to resolve substring searches
+// (which can't use a database index) to user IDs without scanning the User table
+//
+// a search finds the users containing every trigram of the search text by intersecting their posting lists, then
+// checks that each of them actually contains the search text, so the result is the same as a case-insensitive LIKE
+@RequiredArgsConstructor
+@Component
+public class UserSearchIndex extends InMemorySearchIndex<User> {
+    private static final int GRAM_LENGTH = 3;
+
+    private final UserMapper userMapper;
+
+    // trigram -> IDs of users with a field containing it
+    private final Map<String, Set<Long>> postings = new HashMap<>();
+
+    // user ID -> lowercase fields it was indexed with (needed to check matches, and to remove its old postings when it
+    // changes)
+    private final Map<Long, List<String>> fieldsByUserId = new HashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        tryRebuild();
+    }
+
+    @Scheduled(initialDelayString = "${app.user-search-index.rebuild-interval}", fixedDelayString = "${app.user-search-index.rebuild-interval}")
+    public void rebuildOnSchedule() {
+        tryRebuild();
+    }
+
+    // get the IDs of all users whose email, first name or last name contains the search text (ignoring case), or null
+    // if the index is stale, in which case the database must be searched instead (rather than every search waiting for
+    // the index to be rebuilt)
+    public SortedSet<Long> search(String search) {
+        String text = normalise(search);
+        lock.readLock().lock();
+        try {
+            if (isStale()) return null;
+
+            // text shorter than a trigram has no postings, so every user is checked
+            Collection<Long> candidates = text.length() < GRAM_LENGTH ? fieldsByUserId.keySet() : getCandidates(text);
+            SortedSet<Long> result = new TreeSet<>();
+            for (Long id : candidates) {
+                for (String field : fieldsByUserId.get(id)) {
+                    if (field.contains(text)) {
+                        result.add(id);
+                        break;
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // intersect the posting lists of every trigram in the text, starting with the shortest so that the intersection is
+    // as small as possible from the start
+    private Set<Long> getCandidates(String text) {
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String gram : getGrams(text)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids == null) return Collections.emptySet();
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        Set<Long> candidates = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(lists.get(i));
+        }
+        return candidates;
+    }
+
+    private static Set<String> getGrams(String field) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= field.length(); i++) {
+            grams.add(field.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    private static String normalise(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    protected List<User> loadAll() {
+        return userMapper.findSearchFields();
+    }
+
+    @Override
+    protected Long getId(User user) {
+        return user.getUserId();
+    }
+
+    @Override
+    protected void addToIndex(User user) {
+        Long id = user.getUserId();
+        // each field is indexed separately, so that matches can't span two fields
+        List<String> fields = List.of(normalise(user.getEmail()), normalise(user.getFirstName()), normalise(user.getLastName()));
+        for (String field : fields) {
+            for (String gram : getGrams(field)) {
+                postings.computeIfAbsent(gram, g -> new HashSet<>()).add(id);
+            }
+        }
+        fieldsByUserId.put(id, fields);
+    }
+
+    @Override
+    protected void removeFromIndex(Long userId) {
+        List<String> fields = fieldsByUserId.remove(userId);
+        if (fields == null) return;
+        for (String field : fields) {
+            for (String gram : getGrams(field)) {
+                Set<Long> ids = postings.get(gram);
+                if (ids == null) continue; // the same trigram may be in more than one field
+                ids.remove(userId);
+                if (ids.isEmpty()) postings.remove(gram);
+            }
+        }
+    }
+
+    @Override
+    protected void clearIndex() {
+        postings.clear();
+        fieldsByUserId.clear();
+    }
+}
@@ -4,10 +4,19 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import spe.projectportfolio.backend.mapper.UserMapper;
+import spe.projectportfolio.backend.pojo.KeysetPage;
 import spe.projectportfolio.backend.pojo.User;
+import spe.projectportfolio.backend.pojo.UserCursor;
+import spe.projectportfolio.backend.pojo.enums.Role;
+import spe.projectportfolio.backend.pojo.enums.SortDirection;
+import spe.projectportfolio.backend.pojo.enums.UserSort;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 @RequiredArgsConstructor
@@ -15,6 +24,14 @@ import java.util.regex.Pattern;
 public class UserService {
     private final UserMapper userMapper;
     private final PasswordEncoder passwordEncoder;
+    private final UserCache userCache;
+    private final UserSearchIndex userSearchIndex;
+    private final UserEmailFilter userEmailFilter;
+    private final TransactionTemplate transactionTemplate;
+
+    // searches matching more users than this are done in the database instead of looking up the matched IDs, so that
+    // the list of IDs in the query stays short
+    public static final int MAX_SEARCH_IDS = 1000;
 
     @Value("${app.allowed-email-domains}")
     private List<String> allowedEmailDomains;
@@ -30,8 +47,17 @@ public class UserService {
         String passwordHash = passwordEncoder.encode(user.getPassword());
         user.setPassword(passwordHash);
 
-        // insert user into database
-        userMapper.insert(user);
+        // insert user into database (adding the email to the filter first, so that it is never missing from it)
+        //
+        // this is done in a transaction so that the cache and search index are corrected if it is rolled back, but the
+        // password is hashed before it starts so that a database connection isn't held while waiting for it (see
+        // BoundedPasswordEncoder)
+        transactionTemplate.executeWithoutResult(status -> {
+            userEmailFilter.add(user.getEmail());
+            userMapper.insert(user);
+            userCache.invalidate(user.getUserId());
+            userSearchIndex.index(user);
+        });
 
         // return updated user details
         return user;
@@ -56,14 +82,90 @@ public class UserService {
             user.setPassword(passwordHash);
         }
 
-        // update user in database
-        userMapper.update(user);
+        // update user in database, replacing the email in the filter if it has changed (in a transaction, see
+        // registerNewUser)
+        boolean emailChanged = user.getEmail() != null && !user.getEmail().equals(currentUser.getEmail());
+        return transactionTemplate.execute(status -> {
+            if (emailChanged) userEmailFilter.add(user.getEmail());
+            userMapper.update(user);
+            if (emailChanged) userEmailFilter.remove(currentUser.getEmail());
+            userCache.invalidate(user.getUserId());
+
+            // get the full updated user details
+            User updatedUser = userMapper.findById(user.getUserId());
+            userSearchIndex.index(updatedUser);
+
+            // return updated user details
+            return updatedUser;
+        });
+    }
 
-        // get the full updated user details
-        User updatedUser = userMapper.findById(user.getUserId());
+    @Transactional
+    public void deleteUser(Long id) {
+        User user = userMapper.findById(id);
+        userMapper.delete(id);
+        if (user != null) userEmailFilter.remove(user.getEmail());
+        userCache.invalidate(id);
+        userSearchIndex.remove(id);
+    }
 
-        // return updated user details
-        return updatedUser;
+    // check if a user has the given email, only using the database if the email might be registered (see
+    // UserEmailFilter)
+    public boolean emailExists(String email) {
+        if (!userEmailFilter.mightContain(email)) return false;
+        return getUserByEmail(email) != null;
+    }
+
+    // get a user by email (without their password hash), from the cache if it is cached (see UserCache), returning null
+    // if there is no user with the email
+    public User getUserByEmail(String email) {
+        return userCache.getByEmail(email, userMapper::findByEmail);
+    }
+
+    // get a user by ID (see getUserByEmail)
+    public User getUserById(Long id) {
+        return userCache.getById(id, userMapper::findById);
+    }
+
+    // get a page of users (without their passwords) matching the condition, throwing IllegalArgumentException if the
+    // cursor is invalid (see CaseStudyService.getCaseStudiesByCondition)
+    public KeysetPage<User> getUsersByCondition(String search, String email, String firstName, String lastName, Role role, Boolean editPermission, Boolean admin,
+                                                UserSort sort, SortDirection direction, String after, Integer limit) {
+        UserCursor cursor = decodeCursor(after, sort, direction);
+
+        // resolve the search to the matching IDs using the search index, then only fetch those users (unless the index
+        // is stale, in which case the search is done in the database)
+        Set<Long> ids = null;
+        if (search != null && !search.isEmpty()) {
+            Set<Long> matchedIds = userSearchIndex.search(search);
+            if (matchedIds != null && matchedIds.isEmpty()) return new KeysetPage<>(new ArrayList<>(), null);
+            if (matchedIds != null && matchedIds.size() <= MAX_SEARCH_IDS) {
+                ids = matchedIds;
+                search = null;
+            }
+        }
+
+        // one more than the limit is fetched to find out if there is another page after this one
+        Integer fetchLimit = limit == null ? null : limit + 1;
+        List<User> users = userMapper.findByCondition(search, ids, email, firstName, lastName, role, editPermission, admin, sort, direction, cursor, fetchLimit);
+
+        String nextCursor = null;
+        if (limit != null && users.size() > limit) {
+            users = new ArrayList<>(users.subList(0, limit));
+            nextCursor = UserCursor.of(users.get(limit - 1), sort, direction).encode();
+        }
+        return new KeysetPage<>(users, nextCursor);
+    }
+
+    // decode the cursor of the previous page, throwing IllegalArgumentException if it is invalid or was created for a
+    // different sort order
+    private static UserCursor decodeCursor(String after, UserSort sort, SortDirection direction) {
+        if (after == null || after.isEmpty()) return null;
+        UserCursor cursor = UserCursor.decode(after);
+        if (cursor.getSort() != sort || cursor.getDirection() != direction) {
+            throw new IllegalArgumentException("Cursor does not match sort order");
+        }
+        return cursor;
     }
 
     private boolean allFieldsNotNullAndNotEmpty(User user) {
@@ -12,11 +12,33 @@ CREATE TABLE `User` (
 
 CREATE TABLE Image (
     ImageID INT NOT NULL AUTO_INCREMENT,
-    Data LONGBLOB NOT NULL,
+    Data LONGBLOB,
     Type ENUM('JPEG', 'PNG') NOT NULL,
+    Hash CHAR(64) UNIQUE,
+    Size BIGINT,
+    Path VARCHAR(255),
+    OriginalHash CHAR(64) UNIQUE,
+    OriginalSize BIGINT,
+    Width INT,
+    Height INT,
+    Placeholder VARCHAR(2048),
+    Version INT NOT NULL DEFAULT 1,
+    RefCount INT NOT NULL DEFAULT 1,
+    LastReferenced TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     PRIMARY KEY (ImageID)
 );
 
+CREATE TABLE ImageVariant (
+    ImageID INT NOT NULL,
+    Width INT NOT NULL,
+    Height INT NOT NULL,
+    Type ENUM('JPEG', 'PNG') NOT NULL,
+    Quality INT NOT NULL,
+    Data LONGBLOB NOT NULL,
+    PRIMARY KEY (ImageID, Width, Height, Type, Quality),
+    FOREIGN KEY (ImageID) REFERENCES Image(ImageID) ON DELETE CASCADE
+);
+
 CREATE TABLE CaseStudy (
     CaseStudyID INT NOT NULL AUTO_INCREMENT,
     Title VARCHAR(255),
@@ -0,0 +1,35 @@
+-- upgrades a database created with an earlier version of schema.sql (which only had Image.ImageID, Data and Type) to
+-- the current one, and must be run once before starting the new server (new databases only need schema.sql)
+--
+-- images which were already stored:
+-- - have no hash, so they are never shared with new images, and are deleted on their last release
+-- - have one reference each, as they did before
+-- - have no dimensions or placeholder until they are replaced
+-- - have their size found from their data until they are moved to files (see ImageStorageMigration)
+-- - were last referenced at the time of the upgrade, so a full grace period passes before the garbage collector can
+--   delete any of them
+
+ALTER TABLE Image
+    MODIFY Data LONGBLOB NULL,
+    ADD Hash CHAR(64) UNIQUE AFTER `Type`,
+    ADD Size BIGINT AFTER Hash,
+    ADD Path VARCHAR(255) AFTER Size,
+    ADD OriginalHash CHAR(64) UNIQUE AFTER Path,
+    ADD OriginalSize BIGINT AFTER OriginalHash,
+    ADD Width INT AFTER OriginalSize,
+    ADD Height INT AFTER Width,
+    ADD Placeholder VARCHAR(2048) AFTER Height,
+    ADD Version INT NOT NULL DEFAULT 1 AFTER Placeholder,
+    ADD RefCount INT NOT NULL DEFAULT 1 AFTER Version,
+    ADD LastReferenced TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP AFTER RefCount;
+
+CREATE TABLE ImageVariant (
+    ImageID INT NOT NULL,
+    Width INT NOT NULL,
+    Height INT NOT NULL,
+    Type ENUM('JPEG', 'PNG') NOT NULL,
+    Quality INT NOT NULL,
+    Data LONGBLOB NOT NULL,
+    PRIMARY KEY (ImageID, Width, Height, Type, Quality),
+    FOREIGN KEY (ImageID) REFERENCES Image(ImageID) ON DELETE CASCADE
+);
@@ -65,7 +65,7 @@ public class CaseStudyControllerRollbackTests {
         Image image = new Image(null, new byte[]{0,1,2}, ImageType.JPEG);
         imageMapper.insert(image);
         String richText = "<img src=\"" + image.getImageId() + "\">";
-        CaseStudy caseStudy = new CaseStudy(null, "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, null, null, null, null, null, richText, null, null, null, null);
+        CaseStudy caseStudy = new CaseStudy(null, "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, null, null, null, null, null, null, null, null, richText, null, null, null, null);
         caseStudyMapper.insert(caseStudy);
 
         // test invalid case study rich text HTML to check that any inserted and/or deleted images are rolled back
@@ -100,7 +100,7 @@ public class CaseStudyControllerRollbackTests {
         Image image = new Image(null, new byte[]{0,1,2}, ImageType.PNG);
         imageMapper.insert(image);
         String badRichText = "<img src=\"" + image.getImageId() + "\"><img src=\"http://localhost/api/images/100\">";
-        CaseStudy badCaseStudy = new CaseStudy(null, "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, null, null, null, null, null, badRichText, null, null, null, null);
+        CaseStudy badCaseStudy = new CaseStudy(null, "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, null, null, null, null, null, null, null, null, badRichText, null, null, null, null);
         caseStudyMapper.insert(badCaseStudy);
 
         int numImagesInDatabase = imageMapper.findAll().size();
@@ -8,7 +8,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockPart;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
@@ -18,18 +20,29 @@ import spe.projectportfolio.backend.BackendApplication;
 import spe.projectportfolio.backend.config.H2TestProfileJPAConfig;
 import spe.projectportfolio.backend.mapper.*;
 import spe.projectportfolio.backend.pojo.CaseStudy;
+import spe.projectportfolio.backend.pojo.CaseStudySummary;
 import spe.projectportfolio.backend.pojo.CaseStudyUpload;
 import spe.projectportfolio.backend.pojo.Image;
 import spe.projectportfolio.backend.pojo.enums.EditStatus;
 import spe.projectportfolio.backend.pojo.enums.ImageType;
 import spe.projectportfolio.backend.pojo.enums.ProjectStatus;
-
+import spe.projectportfolio.backend.service.CaseStudySearchIndex;
+import spe.projectportfolio.backend.service.ImageService;
+import spe.projectportfolio.backend.service.RichTextImageLinkBackfill;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.Base64;
 import java.util.Date;
 import java.util.List;
+import java.util.Random;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
@@ -49,9 +62,18 @@ class CaseStudyControllerTests {
     @Autowired
     private ImageMapper imageMapper;
 
+    @Autowired
+    private ImageService imageService;
+
     @Autowired
     private CaseStudyMapper caseStudyMapper;
 
+    @Autowired
+    private CaseStudySearchIndex caseStudySearchIndex;
+
+    @Autowired
+    private RichTextImageLinkBackfill richTextImageLinkBackfill;
+
     @Value("${app.api-url}")
     private String url;
 
@@ -64,7 +86,7 @@ class CaseStudyControllerTests {
         // test get all case studies
         mockMvc.perform(get("/api/case-studies").accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(content().string(equalTo(getJson(caseStudies1))));
+                .andExpect(content().string(equalTo(getJson(getSummaries(caseStudies1)))));
 
         List<CaseStudy> caseStudies2 = caseStudyMapper.findByCondition("title", null, null);
         List<CaseStudy> caseStudies3 = caseStudyMapper.findByCondition("title", null, "software2");
@@ -73,18 +95,119 @@ class CaseStudyControllerTests {
         // test get with condition
         mockMvc.perform(get("/api/case-studies?title=title").accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(content().string(equalTo(getJson(caseStudies2))));
+                .andExpect(content().string(equalTo(getJson(getSummaries(caseStudies2)))));
         mockMvc.perform(get("/api/case-studies?title=title&industry=software2").accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(content().string(equalTo(getJson(caseStudies3))));
+                .andExpect(content().string(equalTo(getJson(getSummaries(caseStudies3)))));
         mockMvc.perform(get("/api/case-studies?client-name=client2").accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(content().string(equalTo(getJson(caseStudies4))));
+                .andExpect(content().string(equalTo(getJson(getSummaries(caseStudies4)))));
 
         // test with random title
         mockMvc.perform(get("/api/case-studies?title=abc").accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(content().string(equalTo("[]")));
+
+        // test getting all fields of case studies
+        mockMvc.perform(get("/api/case-studies?view=FULL").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(caseStudies1))));
+        mockMvc.perform(get("/api/case-studies?view=abc").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testGetAllCaseStudiesByGlobalSearch() throws Exception {
+        // create and insert all case studies (inserted directly into the database, so the search index must be rebuilt)
+        List<CaseStudy> caseStudies = createAndInsertThreeCaseStudies(caseStudyMapper, imageMapper);
+        caseStudySearchIndex.rebuild();
+
+        // test search matching every case study
+        mockMvc.perform(get("/api/case-studies?search=Team").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(getSummaries(caseStudies)))));
+
+        // test search matching a prefix of a word, and search with multiple words
+        mockMvc.perform(get("/api/case-studies?search=softw").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(getSummaries(caseStudies)))));
+        mockMvc.perform(get("/api/case-studies?search=software2 problem3").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(getSummaries(List.of(caseStudies.get(2)))))));
+
+        // test search with no matches
+        mockMvc.perform(get("/api/case-studies?search=abc").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("[]")));
+
+        // create a case study with rich text using API, and check it can be found by its text but not by its HTML
+        Date date = new Date();
+        String richText = "<p>Uses <strong>Kubernetes</strong></p>";
+        CaseStudyUpload caseStudyUpload = new CaseStudyUpload(null, "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, date, date, null, null, null, richText, null, null, null, null);
+        mockMvc.perform(post("/api/case-studies")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(getJson(caseStudyUpload))
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isOk());
+        CaseStudy createdCaseStudy = caseStudyMapper.findAll().get(3);
+        mockMvc.perform(get("/api/case-studies?search=kubernetes").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(getSummaries(List.of(createdCaseStudy))))));
+        mockMvc.perform(get("/api/case-studies?search=strong").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("[]")));
+
+        // delete the case study using API, and check it can no longer be found
+        mockMvc.perform(delete("/api/case-studies/" + createdCaseStudy.getCaseStudyId()))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/case-studies?search=kubernetes").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("[]")));
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testGetAllCaseStudiesPaginated() throws Exception {
+        // create and insert all case studies
+        List<CaseStudy> caseStudies = createAndInsertThreeCaseStudies(caseStudyMapper, imageMapper);
+
+        // get the first page of case studies sorted by title in descending order
+        MvcResult result = mockMvc.perform(get("/api/case-studies?sort=TITLE&order=DESC&limit=2").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(getSummaries(List.of(caseStudies.get(2), caseStudies.get(1)))))))
+                .andReturn();
+        String cursor = result.getResponse().getHeader(CaseStudyController.NEXT_CURSOR_HEADER);
+
+        // get the last page using the cursor (there should be no cursor for another page)
+        result = mockMvc.perform(get("/api/case-studies?sort=TITLE&order=DESC&limit=2&after=" + cursor).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(getSummaries(List.of(caseStudies.get(0)))))))
+                .andReturn();
+        assertNull(result.getResponse().getHeader(CaseStudyController.NEXT_CURSOR_HEADER));
+
+        // test paginating global search results
+        caseStudySearchIndex.rebuild();
+        result = mockMvc.perform(get("/api/case-studies?search=software2&limit=1").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(getSummaries(List.of(caseStudies.get(1)))))))
+                .andReturn();
+        cursor = result.getResponse().getHeader(CaseStudyController.NEXT_CURSOR_HEADER);
+        mockMvc.perform(get("/api/case-studies?search=software2&limit=1&after=" + cursor).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(getSummaries(List.of(caseStudies.get(2)))))));
+
+        // test invalid requests (cursor used with a different sort, invalid cursor, invalid limits and invalid sort)
+        mockMvc.perform(get("/api/case-studies?sort=TITLE&limit=1&after=" + cursor).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/case-studies?limit=1&after=abc").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/case-studies?limit=0").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/case-studies?limit=" + (CaseStudyController.MAX_PAGE_SIZE + 1)).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/case-studies?sort=abc").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
     }
 
     @WithMockUser(roles = "ADMIN")
@@ -110,6 +233,74 @@ class CaseStudyControllerTests {
                 .andExpect(status().isBadRequest());
     }
 
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testGetCaseStudyByIdCached() throws Exception {
+        // create and insert case studies, and get one of them so that it is cached
+        CaseStudy caseStudy = createAndInsertThreeCaseStudies(caseStudyMapper, imageMapper).get(0);
+        mockMvc.perform(get("/api/case-studies/" + caseStudy.getCaseStudyId()).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(caseStudy))));
+
+        // modify the case study directly in the database, and check that the cached case study is still returned
+        CaseStudy modifiedCaseStudy = new CaseStudy(caseStudy.getCaseStudyId(), "modified title", null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+        caseStudyMapper.update(modifiedCaseStudy);
+        mockMvc.perform(get("/api/case-studies/" + caseStudy.getCaseStudyId()).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(caseStudy))));
+
+        // update the case study using API, and check that the updated case study is returned
+        CaseStudyUpload caseStudyUpdate = new CaseStudyUpload(caseStudy.getCaseStudyId(), "new title", null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+        MvcResult result = mockMvc.perform(put("/api/case-studies")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(getJson(caseStudyUpdate))
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isOk())
+                .andReturn();
+        mockMvc.perform(get("/api/case-studies/" + caseStudy.getCaseStudyId()).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(result.getResponse().getContentAsString())));
+
+        // delete the case study using API, and check that it can no longer be found
+        mockMvc.perform(delete("/api/case-studies/" + caseStudy.getCaseStudyId()))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/case-studies/" + caseStudy.getCaseStudyId()).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testGetCaseStudyWithImageIdsBackfilled() throws Exception {
+        // insert a case study stored before image links were stored in rich text fields (with just image IDs)
+        Image image = new Image(null, new byte[]{1,2,3}, ImageType.JPEG);
+        imageMapper.insert(image);
+        String richText = "<p>Test</p>\n<p><img src=\"" + image.getImageId() + "\"></p>";
+        CaseStudy caseStudy = new CaseStudy(null, "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, null, null, null, null, null, null, null, null, richText, null, null, null, richText);
+        caseStudyMapper.insert(caseStudy);
+
+        // convert the case study, and make sure the image links are returned as they are stored
+        assertEquals(1, richTextImageLinkBackfill.backfill());
+        String expectedRichText = "<p>Test</p>\n<p><img src=\"/api/images/" + image.getImageId() + "\"></p>";
+        caseStudy.setProblemDescription(expectedRichText);
+        caseStudy.setProjectLearnings(expectedRichText);
+        mockMvc.perform(get("/api/case-studies/" + caseStudy.getCaseStudyId()).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(caseStudy))));
+
+        // make sure converted case studies are not found or converted again
+        assertTrue(caseStudyMapper.findWithRichTextImageIds().isEmpty());
+        assertEquals(0, richTextImageLinkBackfill.backfill());
+
+        // update the case study using API with just the image ID as the src, and make sure it is stored as a link
+        CaseStudyUpload caseStudyUpdate = new CaseStudyUpload(caseStudy.getCaseStudyId(), null, null, null, null, null, null, null, null, null, null, null, null, null, "<p><img src=\"" + image.getImageId() + "\"></p>", null, null, null, null);
+        mockMvc.perform(put("/api/case-studies")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(getJson(caseStudyUpdate))
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isOk());
+        assertEquals("<p><img src=\"/api/images/" + image.getImageId() + "\"></p>", caseStudyMapper.findById(caseStudy.getCaseStudyId()).getProblemDescription());
+    }
+
     @WithMockUser(roles = "ADMIN")
     @Test
     void testCreateCaseStudy() throws Exception {
@@ -221,14 +412,98 @@ class CaseStudyControllerTests {
         assertImageEquals(foundImage2, expectedImage2);
 
         // make sure only one case study is inserted into database, and make sure it is correct
-        String expectedRichText = "<p>Test 1</p>\n<p><img src=\"" + foundImage1.getImageId() + "\"></p>\n<p>Test 2</p>\n<p><img src=\"" + foundImage2.getImageId() + "\"></p>";
+        String expectedRichText = "<p>Test 1</p>\n<p><img src=\"/api/images/" + foundImage1.getImageId() + "\"></p>\n<p>Test 2</p>\n<p><img src=\"/api/images/" + foundImage2.getImageId() + "\"></p>";
         List<CaseStudy> foundCaseStudies = caseStudyMapper.findAll();
         assertEquals(1, foundCaseStudies.size());
         CaseStudy foundCaseStudy = foundCaseStudies.get(0);
-        CaseStudy expectedCaseStudy = new CaseStudy(foundCaseStudy.getCaseStudyId(), "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, date, date, null, null, null, expectedRichText, null, null, null, null);
+        CaseStudy expectedCaseStudy = new CaseStudy(foundCaseStudy.getCaseStudyId(), "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, null, null, null, date, date, null, null, null, expectedRichText, null, null, null, null);
         assertCaseStudyEquals(foundCaseStudy, expectedCaseStudy);
     }
 
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testCreateCaseStudyWithLargeImages() throws Exception {
+        // create images which are decoded in several chunks while the upload is read
+        byte[] imageData1 = new byte[100_000];
+        byte[] imageData2 = new byte[50_001];
+        new Random(0).nextBytes(imageData1);
+        new Random(1).nextBytes(imageData2);
+        String base64Image1 = "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(imageData1);
+        String base64Image2 = "data:image/png;base64,"  + Base64.getEncoder().encodeToString(imageData2);
+        String richText = "<p>Test</p><p><img src='" + base64Image2 + "'></p>";
+
+        // create a case study using API
+        CaseStudyUpload caseStudyUpload = new CaseStudyUpload(null, "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, base64Image1, null, null, null, null, null, null, null, richText, null, null, null, null);
+        mockMvc.perform(post("/api/case-studies")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(getJson(caseStudyUpload))
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isOk());
+
+        // make sure both images are decoded correctly
+        List<Image> foundImages = imageMapper.findAll();
+        assertEquals(2, foundImages.size());
+        assertImageEquals(foundImages.get(0), new Image(foundImages.get(0).getImageId(), imageData1, ImageType.JPEG));
+        assertImageEquals(foundImages.get(1), new Image(foundImages.get(1).getImageId(), imageData2, ImageType.PNG));
+        CaseStudy foundCaseStudy = caseStudyMapper.findAll().get(0);
+        assertEquals(foundImages.get(0).getImageId(), foundCaseStudy.getClientLogoId());
+        assertEquals("<p>Test</p>\n<p><img src=\"/api/images/" + foundImages.get(1).getImageId() + "\"></p>", foundCaseStudy.getProblemDescription());
+
+        // test invalid base64
+        caseStudyUpload.setClientLogoBase64("data:image/png;base64,abc!");
+        mockMvc.perform(post("/api/case-studies")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(getJson(caseStudyUpload))
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testCreateAndUpdateCaseStudyMultipart() throws Exception {
+        // create a case study using API, with the client logo and an image in the rich text in binary parts
+        String richText = "<p>Test</p><p><img src=\"cid:image1\"></p>";
+        CaseStudyUpload caseStudyUpload = new CaseStudyUpload(null, "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, null, null, null, null, null, richText, null, null, null, null);
+        mockMvc.perform(multipart("/api/case-studies")
+                        .part(getPart("caseStudy", MediaType.APPLICATION_JSON, getJson(caseStudyUpload).getBytes()))
+                        .part(getPart("clientLogo", MediaType.IMAGE_JPEG, new byte[]{1,2,3}))
+                        .part(getPart("image1", MediaType.IMAGE_PNG, new byte[]{4,5,6})))
+                .andExpect(status().isOk());
+
+        // make sure the images are inserted into the database, and the case study refers to them
+        List<Image> foundImages = imageMapper.findAll();
+        assertEquals(2, foundImages.size());
+        assertImageEquals(foundImages.get(0), new Image(foundImages.get(0).getImageId(), new byte[]{1,2,3}, ImageType.JPEG));
+        assertImageEquals(foundImages.get(1), new Image(foundImages.get(1).getImageId(), new byte[]{4,5,6}, ImageType.PNG));
+        CaseStudy foundCaseStudy = caseStudyMapper.findAll().get(0);
+        assertEquals(foundImages.get(0).getImageId(), foundCaseStudy.getClientLogoId());
+        assertEquals("<p>Test</p>\n<p><img src=\"/api/images/" + foundImages.get(1).getImageId() + "\"></p>", foundCaseStudy.getProblemDescription());
+
+        // replace the image in the rich text using API
+        CaseStudyUpload caseStudyUpdate = new CaseStudyUpload(foundCaseStudy.getCaseStudyId(), null, null, null, null, null, null, null, null, null, null, null, null, null, "<p><img src=\"cid:image2\"></p>", null, null, null, null);
+        mockMvc.perform(multipart(HttpMethod.PUT, "/api/case-studies")
+                        .part(getPart("caseStudy", MediaType.APPLICATION_JSON, getJson(caseStudyUpdate).getBytes()))
+                        .part(getPart("image2", MediaType.IMAGE_PNG, new byte[]{7,8,9})))
+                .andExpect(status().isOk());
+        foundImages = imageMapper.findAll();
+        assertEquals(2, foundImages.size());
+        assertImageEquals(foundImages.get(1), new Image(foundImages.get(1).getImageId(), new byte[]{7,8,9}, ImageType.PNG));
+        foundCaseStudy = caseStudyMapper.findById(foundCaseStudy.getCaseStudyId());
+        assertEquals("<p><img src=\"/api/images/" + foundImages.get(1).getImageId() + "\"></p>", foundCaseStudy.getProblemDescription());
+
+        // test missing case study part, missing image part, and image part which is not an image
+        mockMvc.perform(multipart("/api/case-studies")
+                        .part(getPart("image1", MediaType.IMAGE_PNG, new byte[]{4,5,6})))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(multipart("/api/case-studies")
+                        .part(getPart("caseStudy", MediaType.APPLICATION_JSON, getJson(caseStudyUpload).getBytes())))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(multipart("/api/case-studies")
+                        .part(getPart("caseStudy", MediaType.APPLICATION_JSON, getJson(caseStudyUpload).getBytes()))
+                        .part(getPart("image1", MediaType.TEXT_PLAIN, new byte[]{4,5,6})))
+                .andExpect(status().isBadRequest());
+    }
+
     @WithMockUser(roles = "ADMIN")
     @Test
     void testUpdateCaseStudy() throws Exception {
@@ -239,8 +514,8 @@ class CaseStudyControllerTests {
         // insert case study into database
         Date startDate = new Date();
         Date endDate = new Date();
-        CaseStudy caseStudy1 = new CaseStudy(null, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), "software", "design", startDate, endDate, "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
-        CaseStudy caseStudy2 = new CaseStudy(null, "title3", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client3", "client3 link", null,                "software", "design", startDate, endDate, "summary3", "team members", "links3", "problem1", "solution3", "outcomes3", "tools used", "project learnings");
+        CaseStudy caseStudy1 = new CaseStudy(null, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), null, null, null, "software", "design", startDate, endDate, "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
+        CaseStudy caseStudy2 = new CaseStudy(null, "title3", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client3", "client3 link", null, null, null, null,                "software", "design", startDate, endDate, "summary3", "team members", "links3", "problem1", "solution3", "outcomes3", "tools used", "project learnings");
         caseStudyMapper.insert(caseStudy1);
         caseStudyMapper.insert(caseStudy2);
 
@@ -278,8 +553,8 @@ class CaseStudyControllerTests {
         assertEquals(2, foundCaseStudies.size());
         CaseStudy foundCaseStudy1 = foundCaseStudies.get(0);
         CaseStudy foundCaseStudy2 = foundCaseStudies.get(1);
-        CaseStudy expectedCaseStudy1 = new CaseStudy(caseStudy1.getCaseStudyId(), "title2", ProjectStatus.COMPLETED, EditStatus.PUBLISHED, "client2", "client2 link", foundImage1.getImageId(), "software", "design2", startDate, endDate, "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
-        CaseStudy expectedCaseStudy2 = new CaseStudy(caseStudy2.getCaseStudyId(), "title2", ProjectStatus.COMPLETED, EditStatus.PUBLISHED, "client2", "client2 link", foundImage2.getImageId(), "software", "design2", startDate, endDate, "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
+        CaseStudy expectedCaseStudy1 = new CaseStudy(caseStudy1.getCaseStudyId(), "title2", ProjectStatus.COMPLETED, EditStatus.PUBLISHED, "client2", "client2 link", foundImage1.getImageId(), null, null, null, "software", "design2", startDate, endDate, "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
+        CaseStudy expectedCaseStudy2 = new CaseStudy(caseStudy2.getCaseStudyId(), "title2", ProjectStatus.COMPLETED, EditStatus.PUBLISHED, "client2", "client2 link", foundImage2.getImageId(), null, null, null, "software", "design2", startDate, endDate, "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
         assertCaseStudyEquals(foundCaseStudy1, expectedCaseStudy1);
         assertCaseStudyEquals(foundCaseStudy2, expectedCaseStudy2);
 
@@ -309,7 +584,7 @@ class CaseStudyControllerTests {
         foundCaseStudies = caseStudyMapper.findAll();
         assertEquals(2, foundCaseStudies.size());
         CaseStudy foundCaseStudy3 = foundCaseStudies.get(0);
-        CaseStudy expectedCaseStudy3 = new CaseStudy(caseStudy1.getCaseStudyId(), "title3", ProjectStatus.COMPLETED, EditStatus.DRAFT, "client3", "client3 link", foundImage1.getImageId(), "software", "design3", startDate, endDate, "summary2", "team members", "links3", "problem2", "solution2", "outcomes3", "tools used", "project learnings 2");
+        CaseStudy expectedCaseStudy3 = new CaseStudy(caseStudy1.getCaseStudyId(), "title3", ProjectStatus.COMPLETED, EditStatus.DRAFT, "client3", "client3 link", foundImage1.getImageId(), null, null, null, "software", "design3", startDate, endDate, "summary2", "team members", "links3", "problem2", "solution2", "outcomes3", "tools used", "project learnings 2");
         assertCaseStudyEquals(foundCaseStudy3, expectedCaseStudy3);
 
         // get case study object from JSON response, and check it is correct
@@ -394,11 +669,11 @@ class CaseStudyControllerTests {
         assertImageEquals(foundImage5, expectedImage5);
 
         // make sure only one case study is in the database, and make sure it is correct
-        String expectedRichText = "<p><img src=\"" + foundImage4.getImageId() + "\"></p>\n<p>New Test 1</p>\n<p>New Test 2</p>\n<p><img src=\"" + foundImage3.getImageId() + "\"></p>\n<p><img src=\"" + foundImage5.getImageId() + "\"></p>";
+        String expectedRichText = "<p><img src=\"/api/images/" + foundImage4.getImageId() + "\"></p>\n<p>New Test 1</p>\n<p>New Test 2</p>\n<p><img src=\"/api/images/" + foundImage3.getImageId() + "\"></p>\n<p><img src=\"/api/images/" + foundImage5.getImageId() + "\"></p>";
         List<CaseStudy> foundCaseStudies = caseStudyMapper.findAll();
         assertEquals(1, foundCaseStudies.size());
         CaseStudy foundCaseStudy = foundCaseStudies.get(0);
-        CaseStudy expectedCaseStudy = new CaseStudy(foundCaseStudy.getCaseStudyId(), "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, date, date, null, null, null, expectedRichText, null, null, null, null);
+        CaseStudy expectedCaseStudy = new CaseStudy(foundCaseStudy.getCaseStudyId(), "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, null, null, null, date, date, null, null, null, expectedRichText, null, null, null, null);
         assertCaseStudyEquals(foundCaseStudy, expectedCaseStudy);
     }
 
@@ -412,8 +687,8 @@ class CaseStudyControllerTests {
         imageMapper.insert(image2);
 
         // create and insert two case studies
-        CaseStudy caseStudy1 = new CaseStudy(null, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), "software", "design", new Date(), new Date(), "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
-        CaseStudy caseStudy2 = new CaseStudy(null, "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), "software2", "design", new Date(), new Date(), "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
+        CaseStudy caseStudy1 = new CaseStudy(null, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), null, null, null, "software", "design", new Date(), new Date(), "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
+        CaseStudy caseStudy2 = new CaseStudy(null, "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), null, null, null, "software2", "design", new Date(), new Date(), "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
         caseStudyMapper.insert(caseStudy1);
         caseStudyMapper.insert(caseStudy2);
 
@@ -482,6 +757,100 @@ class CaseStudyControllerTests {
         assertEquals(0, foundCaseStudies.size());
     }
 
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testDeleteCaseStudyWithSharedImages() throws Exception {
+        // create two case studies using API with the same client logo, and the same image in their rich text
+        String base64Image = "data:image/png;base64," + Base64.getEncoder().encodeToString(new byte[]{1,2,3});
+        String richText = "<p><img src=\"" + base64Image + "\"></p>";
+        CaseStudyUpload caseStudyUpload = new CaseStudyUpload(null, "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, base64Image, null, null, null, null, null, null, null, richText, null, null, null, null);
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/api/case-studies")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(getJson(caseStudyUpload))
+                            .characterEncoding("utf-8"))
+                    .andExpect(status().isOk());
+        }
+
+        // make sure the image is only stored once
+        List<Image> foundImages = imageMapper.findAll();
+        assertEquals(1, foundImages.size());
+        List<CaseStudy> foundCaseStudies = caseStudyMapper.findAll();
+        assertEquals(foundImages.get(0).getImageId(), foundCaseStudies.get(0).getClientLogoId());
+        assertEquals(foundImages.get(0).getImageId(), foundCaseStudies.get(1).getClientLogoId());
+
+        // delete the first case study using API, and make sure the image is kept for the second one
+        mockMvc.perform(delete("/api/case-studies/" + foundCaseStudies.get(0).getCaseStudyId()))
+                .andExpect(status().isOk());
+        assertEquals(1, imageMapper.findAll().size());
+
+        // delete the second case study using API, and make sure the image is deleted
+        mockMvc.perform(delete("/api/case-studies/" + foundCaseStudies.get(1).getCaseStudyId()))
+                .andExpect(status().isOk());
+        assertEquals(0, imageMapper.findAll().size());
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testImageDimensionsAndPlaceholders() throws Exception {
+        // create a case study using API with a real image as the client logo and in its rich text, with a width and
+        // style which should be replaced by the ones of the stored image
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB), "png", out);
+        String base64Image = "data:image/png;base64," + Base64.getEncoder().encodeToString(out.toByteArray());
+        String richText = "<p><img src=\"" + base64Image + "\" width=\"1\" style=\"position: fixed\"></p>";
+        CaseStudyUpload caseStudyUpload = new CaseStudyUpload(null, "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, base64Image, null, null, null, null, null, null, null, richText, null, null, null, null);
+        mockMvc.perform(post("/api/case-studies")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(getJson(caseStudyUpload))
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isOk());
+
+        // make sure the dimensions and placeholder of the image are stored
+        List<Image> foundImages = imageMapper.findAll();
+        assertEquals(1, foundImages.size());
+        Image image = foundImages.get(0);
+        assertEquals(400, image.getWidth());
+        assertEquals(200, image.getHeight());
+        assertTrue(image.getPlaceholder().startsWith("data:image/png;base64,"));
+        BufferedImage placeholder = ImageIO.read(new ByteArrayInputStream(Base64.getDecoder().decode(image.getPlaceholder().substring("data:image/png;base64,".length()))));
+        assertEquals(16, placeholder.getWidth());
+        assertEquals(8, placeholder.getHeight());
+
+        // make sure they are returned with the case study, and set on the image in the rich text
+        CaseStudy foundCaseStudy = caseStudyMapper.findAll().get(0);
+        String imageAttributes = "width=\"400\" height=\"200\" style=\"background-image: url(" + image.getPlaceholder() + ")\"";
+        String expectedRichText = "<p><img src=\"/api/images/" + image.getImageId() + "\" " + imageAttributes + "></p>";
+        assertEquals(expectedRichText, foundCaseStudy.getProblemDescription());
+        CaseStudy returnedCaseStudy = caseStudyMapper.findById(foundCaseStudy.getCaseStudyId());
+        assertEquals(400, returnedCaseStudy.getClientLogoWidth());
+        assertEquals(200, returnedCaseStudy.getClientLogoHeight());
+        assertEquals(image.getPlaceholder(), returnedCaseStudy.getClientLogoPlaceholder());
+
+        // update the case study using API with a link to the image, and make sure the attributes are set on it too
+        String imageLink = url + "/api/images/" + image.getImageId();
+        CaseStudyUpload caseStudyUpdate = new CaseStudyUpload(foundCaseStudy.getCaseStudyId(), null, null, null, null, null, null, null, null, null, null, null, null, null, "<p><img src=\"" + imageLink + "\"></p>", null, null, null, null);
+        mockMvc.perform(put("/api/case-studies")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(getJson(caseStudyUpdate))
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isOk());
+        assertEquals(expectedRichText, caseStudyMapper.findById(foundCaseStudy.getCaseStudyId()).getProblemDescription());
+        assertEquals(1, imageMapper.findAll().size());
+
+        // replace the image with a smaller one, and make sure the attributes in the rich text and the dimensions of the
+        // client logo are updated
+        out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(100, 50, BufferedImage.TYPE_INT_RGB), "png", out);
+        imageService.replace(new Image(image.getImageId(), out.toByteArray(), image.getType()));
+        Image replacedImage = imageMapper.findMetadataById(image.getImageId());
+        String replacedAttributes = "width=\"100\" height=\"50\" style=\"background-image: url(" + replacedImage.getPlaceholder() + ")\"";
+        returnedCaseStudy = caseStudyMapper.findById(foundCaseStudy.getCaseStudyId());
+        assertEquals("<p><img src=\"/api/images/" + image.getImageId() + "\" " + replacedAttributes + "></p>", returnedCaseStudy.getProblemDescription());
+        assertEquals(100, returnedCaseStudy.getClientLogoWidth());
+        assertEquals(50, returnedCaseStudy.getClientLogoHeight());
+    }
+
     @WithMockUser(roles = "ADMIN")
     @Test
     void testRichTextHTMLSanitisation() throws Exception {
@@ -505,7 +874,7 @@ class CaseStudyControllerTests {
         List<CaseStudy> foundCaseStudies = caseStudyMapper.findAll();
         assertEquals(1, foundCaseStudies.size());
         CaseStudy foundCaseStudy = foundCaseStudies.get(0);
-        CaseStudy expectedCaseStudy = new CaseStudy(foundCaseStudy.getCaseStudyId(), "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, date, date, null, null, null, expectedRichText, null, null, null, null);
+        CaseStudy expectedCaseStudy = new CaseStudy(foundCaseStudy.getCaseStudyId(), "title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, null, null, null, null, null, null, null, null, date, date, null, null, null, expectedRichText, null, null, null, null);
         assertCaseStudyEquals(foundCaseStudy, expectedCaseStudy);
     }
 
@@ -593,10 +962,35 @@ class CaseStudyControllerTests {
                 .andExpect(status().isOk());
     }
 
+    static MockPart getPart(String name, MediaType contentType, byte[] content) {
+        MockPart part = new MockPart(name, content);
+        part.getHeaders().setContentType(contentType);
+        return part;
+    }
+
     static String getJson(Object object) throws JsonProcessingException {
         return new ObjectMapper().writeValueAsString(object);
     }
 
+    static List<CaseStudySummary> getSummaries(List<CaseStudy> caseStudies) {
+        return caseStudies.stream()
+                .map(caseStudy -> new CaseStudySummary(
+                        caseStudy.getCaseStudyId(),
+                        caseStudy.getTitle(),
+                        caseStudy.getProjectStatus(),
+                        caseStudy.getClientName(),
+                        caseStudy.getClientLogoId(),
+                        null, // images inserted directly using the mapper have no hash, dimensions or placeholder
+                        null,
+                        null,
+                        null,
+                        caseStudy.getIndustry(),
+                        caseStudy.getStartDate(),
+                        caseStudy.getEndDate(),
+                        caseStudy.getSummary()))
+                .toList();
+    }
+
     public static CaseStudy getCaseStudyFromUploadData(CaseStudyUpload data, Long imageId) {
         return new CaseStudy(
                 data.getCaseStudyId(),
@@ -606,6 +1000,9 @@ class CaseStudyControllerTests {
                 data.getClientName(),
                 data.getClientLink(),
                 imageId,
+                null, // the dimensions and placeholder of the client logo are only returned, never stored
+                null,
+                null,
                 data.getIndustry(),
                 data.getProjectType(),
                 data.getStartDate(),
@@ -631,9 +1028,9 @@ class CaseStudyControllerTests {
         imageMapper.insert(image3);
 
         // create and insert case studies
-        CaseStudy caseStudy1 = new CaseStudy(null, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), "software", "design", new Date(), new Date(), "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
-        CaseStudy caseStudy2 = new CaseStudy(null, "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), "software2", "design", new Date(), new Date(), "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
-        CaseStudy caseStudy3 = new CaseStudy(null, "title3", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client3", "client3 link", image3.getImageId(), "software2", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
+        CaseStudy caseStudy1 = new CaseStudy(null, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), null, null, null, "software", "design", new Date(), new Date(), "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
+        CaseStudy caseStudy2 = new CaseStudy(null, "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), null, null, null, "software2", "design", new Date(), new Date(), "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
+        CaseStudy caseStudy3 = new CaseStudy(null, "title3", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client3", "client3 link", image3.getImageId(), null, null, null, "software2", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
         caseStudyMapper.insert(caseStudy1);
         caseStudyMapper.insert(caseStudy2);
         caseStudyMapper.insert(caseStudy3);
@@ -0,0 +1,99 @@
+package spe.projectportfolio.backend.controller;
+
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.boot.test.autoconfigure.AutoConfigureMybatis;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.annotation.Transactional;
+import spe.projectportfolio.backend.BackendApplication;
+import spe.projectportfolio.backend.config.H2TestProfileJPAConfig;
+import spe.projectportfolio.backend.mapper.ImageMapper;
+import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.enums.ImageType;
+import spe.projectportfolio.backend.service.FileSystemImageStorage;
+import spe.projectportfolio.backend.service.ImageStorageMigration;
+
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// tests for images stored in files rather than in the database
+//
+// this uses a different application context to the other tests, but the same in-memory database, so the schema may
+// already have been created
+@SpringBootTest(classes = {BackendApplication.class, H2TestProfileJPAConfig.class},
+        properties = {"app.image-storage.type=FILESYSTEM", "app.image-storage.migration.delay=0ms", "spring.sql.init.continue-on-error=true"})
+@AutoConfigureMockMvc
+@AutoConfigureMybatis
+@ActiveProfiles("test")
+@Transactional
+class ImageControllerFileSystemStorageTests {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ImageMapper imageMapper;
+
+    @Autowired
+    private FileSystemImageStorage fileSystemImageStorage;
+
+    @Autowired
+    private ImageStorageMigration imageStorageMigration;
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testCreateAndGetImage() throws Exception {
+        // create image using API
+        byte[] data = new byte[]{1,2,3};
+        MvcResult result = mockMvc.perform(post("/api/images")
+                        .contentType(MediaType.IMAGE_PNG)
+                        .content(data))
+                .andExpect(status().isOk())
+                .andReturn();
+        Long id = Long.valueOf(result.getResponse().getContentAsString());
+
+        // check only the metadata of the image is in the database, and its data is in a file
+        Image foundImage = imageMapper.findById(id);
+        assertNull(foundImage.getData());
+        assertEquals(foundImage.getSize(), data.length);
+        assertArrayEquals(Files.readAllBytes(fileSystemImageStorage.getFile(foundImage.getPath())), data);
+
+        // check image can be got using API
+        mockMvc.perform(get("/api/images/" + id).accept(MediaType.IMAGE_PNG))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_PNG))
+                .andExpect(content().bytes(data));
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testMigrateImages() throws Exception {
+        // insert images into the database directly, as they were before they were stored in files
+        List<Image> images = ImageControllerTests.createAndInsertThreeImages(imageMapper);
+
+        // move them to files, and check they are no longer in the database
+        assertEquals(imageStorageMigration.migrate(), 3);
+        assertEquals(imageStorageMigration.migrate(), 0);
+        for (Image image : images) {
+            Image foundImage = imageMapper.findById(image.getImageId());
+            assertNull(foundImage.getData());
+            assertNotNull(foundImage.getPath());
+
+            // check image can still be got using API
+            mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_JPEG, MediaType.IMAGE_PNG))
+                    .andExpect(status().isOk())
+                    .andExpect(content().bytes(image.getData()));
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package spe.projectportfolio.backend.controller;
 
+import com.jayway.jsonpath.JsonPath;
 import org.junit.jupiter.api.Test;
 import org.mybatis.spring.boot.test.autoconfigure.AutoConfigureMybatis;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
@@ -14,16 +16,39 @@ import org.springframework.transaction.annotation.Transactional;
 import spe.projectportfolio.backend.BackendApplication;
 import spe.projectportfolio.backend.config.H2TestProfileJPAConfig;
 import spe.projectportfolio.backend.mapper.*;
+import spe.projectportfolio.backend.pojo.CaseStudy;
 import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.ImageCacheStats;
+import spe.projectportfolio.backend.pojo.ImageGarbageCollectionStats;
 import spe.projectportfolio.backend.pojo.enums.ImageType;
+import spe.projectportfolio.backend.service.DatabaseImageStorage;
+import spe.projectportfolio.backend.service.ImageCache;
+import spe.projectportfolio.backend.service.ImageGarbageCollector;
+import spe.projectportfolio.backend.service.ImageOptimizer;
+import spe.projectportfolio.backend.service.ImageService;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static spe.projectportfolio.backend.controller.ImageController.getMediaTypeFromImageType;
 
@@ -39,6 +64,24 @@ class ImageControllerTests {
     @Autowired
     private ImageMapper imageMapper;
 
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private ImageCache imageCache;
+
+    @Autowired
+    private ImageVariantMapper imageVariantMapper;
+
+    @Autowired
+    private ImageOptimizer imageOptimizer;
+
+    @Autowired
+    private ImageGarbageCollector imageGarbageCollector;
+
+    @Autowired
+    private CaseStudyMapper caseStudyMapper;
+
     @WithMockUser(roles = "ADMIN")
     @Test
     void testGetImageById() throws Exception {
@@ -63,6 +106,304 @@ class ImageControllerTests {
                 .andExpect(status().isBadRequest());
     }
 
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testGetLargeImage() throws Exception {
+        // insert an image which is read from the database in several chunks
+        byte[] data = new byte[DatabaseImageStorage.CHUNK_SIZE * 2 + 100];
+        new Random(0).nextBytes(data);
+        Image image = new Image(null, data, ImageType.JPEG);
+        imageService.store(image);
+
+        // check the whole image is sent, with its size as the content length
+        mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_JPEG))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, data.length))
+                .andExpect(content().contentType(MediaType.IMAGE_JPEG))
+                .andExpect(content().bytes(data));
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testGetImageRange() throws Exception {
+        // insert an image which is read from the database in several chunks
+        byte[] data = new byte[DatabaseImageStorage.CHUNK_SIZE * 2 + 100];
+        new Random(0).nextBytes(data);
+        Image image = new Image(null, data, ImageType.JPEG);
+        imageService.store(image);
+        String eTag = "\"" + image.getHash() + "\"";
+
+        // get a range across two chunks (twice, since the second time the image is cached), and the last 100 bytes
+        int start = DatabaseImageStorage.CHUNK_SIZE - 10;
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_JPEG).header(HttpHeaders.RANGE, "bytes=" + start + "-" + (start + 19)))
+                    .andExpect(status().isPartialContent())
+                    .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (start + 19) + "/" + data.length))
+                    .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 20))
+                    .andExpect(content().bytes(Arrays.copyOfRange(data, start, start + 20)));
+        }
+        mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_JPEG).header(HttpHeaders.RANGE, "bytes=-100").header(HttpHeaders.IF_RANGE, eTag))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes(Arrays.copyOfRange(data, data.length - 100, data.length)));
+
+        // check the whole image is sent if If-Range doesn't match, and ranges after the end of the image can't be sent
+        mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_JPEG).header(HttpHeaders.RANGE, "bytes=0-9").header(HttpHeaders.IF_RANGE, "\"other\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(content().bytes(data));
+        mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_JPEG).header(HttpHeaders.RANGE, "bytes=" + data.length + "-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + data.length));
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testGetImageCaching() throws Exception {
+        // store image using the image service, so that it has a hash
+        Image image = new Image(null, new byte[]{1,2,3}, ImageType.PNG);
+        imageService.store(image);
+        String eTag = "\"" + image.getHash() + "\"";
+
+        // check image is sent with its hash as the ETag, and is revalidated by the browser
+        mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_PNG))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+                .andExpect(content().bytes(image.getData()));
+
+        // check image is not sent again if the browser already has it
+        mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_PNG).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(content().bytes(new byte[0]));
+        mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_PNG).header(HttpHeaders.IF_NONE_MATCH, "\"abc\""))
+                .andExpect(status().isOk());
+
+        // check image is cached without revalidating if its URL includes its hash
+        mockMvc.perform(get("/api/images/" + image.getImageId() + "?v=" + image.getHash()).accept(MediaType.IMAGE_PNG))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, private, immutable"));
+
+        // check images without a stored hash use their version, which changes when the image is replaced (here with the
+        // same data as another image, so it is still stored without a hash)
+        Image oldImage = new Image(null, new byte[]{4,5,6}, ImageType.JPEG);
+        imageMapper.insert(oldImage);
+        mockMvc.perform(get("/api/images/" + oldImage.getImageId()).accept(MediaType.IMAGE_JPEG))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"v1\""));
+        imageService.replace(new Image(oldImage.getImageId(), image.getData(), ImageType.PNG));
+        mockMvc.perform(get("/api/images/" + oldImage.getImageId()).accept(MediaType.IMAGE_PNG).header(HttpHeaders.IF_NONE_MATCH, "\"v1\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"v2\""))
+                .andExpect(content().bytes(image.getData()));
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testGetCachedImage() throws Exception {
+        Image image = new Image(null, new byte[]{1,2,3}, ImageType.PNG);
+        imageService.store(image);
+
+        // get image twice, and check the second time it is got from the cache
+        ImageCacheStats stats = imageCache.getStats();
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_PNG))
+                    .andExpect(status().isOk())
+                    .andExpect(content().bytes(image.getData()));
+        }
+        assertEquals(imageCache.getStats().getMisses(), stats.getMisses() + 1);
+        assertEquals(imageCache.getStats().getHits(), stats.getHits() + 1);
+
+        // update image using API, and check the new image is got instead of the cached one
+        byte[] newData = new byte[]{4,5,6};
+        mockMvc.perform(put("/api/images/" + image.getImageId())
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .content(newData))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_JPEG))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_JPEG))
+                .andExpect(content().bytes(newData));
+
+        // delete image using API, and check it is no longer found
+        mockMvc.perform(delete("/api/images/" + image.getImageId()))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_JPEG))
+                .andExpect(status().isNotFound());
+
+        // check cache statistics can be got using API
+        mockMvc.perform(get("/api/images/cache-stats").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testGetResizedImage() throws Exception {
+        // store a 400x200 PNG image
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_ARGB), "png", out);
+        Image image = new Image(null, out.toByteArray(), ImageType.PNG);
+        imageService.store(image);
+
+        // get image resized to fit within a width of 100 (twice, since the second time it is already resized), and check
+        // it is resized once
+        for (int i = 0; i < 2; i++) {
+            MvcResult result = mockMvc.perform(get("/api/images/" + image.getImageId() + "?w=100").accept(MediaType.IMAGE_PNG))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(MediaType.IMAGE_PNG))
+                    .andReturn();
+            BufferedImage resized = ImageIO.read(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()));
+            assertEquals(resized.getWidth(), 100);
+            assertEquals(resized.getHeight(), 50);
+        }
+        assertEquals(imageVariantMapper.countByImageId(image.getImageId()), 1);
+
+        // get image resized to fit within a height of 100 as a JPEG, and check it is not enlarged to fit a larger width
+        MvcResult result = mockMvc.perform(get("/api/images/" + image.getImageId() + "?w=1024&h=100&format=JPEG&quality=75").accept(MediaType.IMAGE_JPEG))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_JPEG))
+                .andReturn();
+        BufferedImage resized = ImageIO.read(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()));
+        assertEquals(resized.getWidth(), 200);
+        assertEquals(resized.getHeight(), 100);
+
+        // check resized images are revalidated using their ETag
+        String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/api/images/" + image.getImageId() + "?w=1024&h=100&format=JPEG&quality=75").accept(MediaType.IMAGE_JPEG).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        // check resized images are deleted when the image is replaced
+        mockMvc.perform(put("/api/images/" + image.getImageId())
+                        .contentType(MediaType.IMAGE_PNG)
+                        .content(image.getData()))
+                .andExpect(status().isOk());
+        assertEquals(imageVariantMapper.countByImageId(image.getImageId()), 0);
+
+        // test sizes and qualities which are not allowed, and images which can't be resized
+        mockMvc.perform(get("/api/images/" + image.getImageId() + "?w=101").accept(MediaType.IMAGE_PNG))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/images/" + image.getImageId() + "?w=100&quality=75").accept(MediaType.IMAGE_PNG))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/images/" + image.getImageId() + "?format=JPEG&quality=1").accept(MediaType.IMAGE_JPEG))
+                .andExpect(status().isBadRequest());
+        Image invalidImage = new Image(null, new byte[]{1,2,3}, ImageType.PNG);
+        imageService.store(invalidImage);
+        mockMvc.perform(get("/api/images/" + invalidImage.getImageId() + "?w=100").accept(MediaType.IMAGE_PNG))
+                .andExpect(status().isBadRequest());
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testOptimizeImage() throws Exception {
+        // store a 4096x64 PNG image, which is larger than the maximum dimension
+        BufferedImage original = new BufferedImage(4096, 64, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < original.getWidth(); x++) {
+            for (int y = 0; y < original.getHeight(); y++) {
+                original.setRGB(x, y, x * y);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(original, "png", out);
+        byte[] originalData = out.toByteArray();
+        Image image = new Image(null, originalData, ImageType.PNG);
+        imageService.store(image);
+
+        // optimize image, and check it is scaled down and smaller, and is only optimized once
+        assertTrue(imageOptimizer.optimize(image.getImageId()));
+        assertFalse(imageOptimizer.optimize(image.getImageId()));
+        Image optimized = imageMapper.findMetadataById(image.getImageId());
+        assertEquals(optimized.getOriginalSize(), (long) originalData.length);
+        assertTrue(optimized.getSize() < originalData.length);
+        MvcResult result = mockMvc.perform(get("/api/images/" + image.getImageId()).accept(MediaType.IMAGE_PNG))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertEquals(ImageIO.read(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())).getWidth(), 2048);
+
+        // check storing the original image again refers to the optimized one
+        assertEquals(imageService.store(new Image(null, originalData, ImageType.PNG)), image.getImageId());
+
+        // check images which can't be read are left as they are
+        Image invalidImage = new Image(null, new byte[]{1,2,3}, ImageType.PNG);
+        imageService.store(invalidImage);
+        assertFalse(imageOptimizer.optimize(invalidImage.getImageId()));
+        assertEquals(imageMapper.findMetadataById(invalidImage.getImageId()).getSize(), 3L);
+
+        mockMvc.perform(get("/api/images/optimization-stats").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.images").value(2))
+                .andExpect(jsonPath("$.originalBytes").value(originalData.length + 3));
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testGetImagesByIds() throws Exception {
+        // store a small image, and a 400x200 PNG image
+        Image smallImage = new Image(null, new byte[]{1,2,3}, ImageType.JPEG);
+        imageService.store(smallImage);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_ARGB), "png", out);
+        Image pngImage = new Image(null, out.toByteArray(), ImageType.PNG);
+        imageService.store(pngImage);
+
+        // get both images (and one which doesn't exist) as data URIs
+        String ids = smallImage.getImageId() + "," + pngImage.getImageId() + ",0";
+        MvcResult result = mockMvc.perform(get("/api/images/batch?ids=" + ids).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$." + smallImage.getImageId()).value("data:image/jpeg;base64,AQID"))
+                .andExpect(jsonPath("$." + pngImage.getImageId()).value("data:image/png;base64," + Base64.getEncoder().encodeToString(pngImage.getData())))
+                .andReturn();
+
+        // check the images are revalidated using their ETag
+        String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/api/images/batch?ids=" + ids).accept(MediaType.APPLICATION_JSON).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        // get the images resized to fit within a width of 100, where the small image can't be resized so is left out
+        result = mockMvc.perform(get("/api/images/batch?ids=" + ids + "&w=100").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andReturn();
+        String dataUri = JsonPath.read(result.getResponse().getContentAsString(), "$." + pngImage.getImageId());
+        byte[] resizedData = Base64.getDecoder().decode(dataUri.substring(dataUri.indexOf(',') + 1));
+        assertEquals(ImageIO.read(new ByteArrayInputStream(resizedData)).getWidth(), 100);
+
+        // test sizes which are not allowed, and too many IDs
+        mockMvc.perform(get("/api/images/batch?ids=" + ids + "&w=101").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        String tooManyIds = LongStream.rangeClosed(1, ImageController.MAX_BATCH_SIZE + 1).mapToObj(Long::toString).collect(Collectors.joining(","));
+        mockMvc.perform(get("/api/images/batch?ids=" + tooManyIds).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testCollectUnreferencedImages() throws Exception {
+        // store a client logo, an image in rich text, and an image which no case study refers to
+        Image clientLogo = new Image(null, new byte[]{1,2,3}, ImageType.PNG);
+        Image richTextImage = new Image(null, new byte[]{4,5,6}, ImageType.PNG);
+        Image unreferencedImage = new Image(null, new byte[]{7,8,9,10}, ImageType.PNG);
+        imageService.store(clientLogo);
+        imageService.store(richTextImage);
+        imageService.store(unreferencedImage);
+        CaseStudy caseStudy = new CaseStudy();
+        caseStudy.setClientLogoId(clientLogo.getImageId());
+        caseStudy.setOutcomes("<p><img src=\"/api/images/" + richTextImage.getImageId() + "\"></p>");
+        caseStudyMapper.insert(caseStudy);
+
+        // check only the unreferenced image is deleted
+        ImageGarbageCollectionStats deleted = imageGarbageCollector.collect();
+        assertEquals(deleted.getImages(), 1);
+        assertTrue(deleted.getBytes() >= 4);
+        assertNotNull(imageMapper.findMetadataById(clientLogo.getImageId()));
+        assertNotNull(imageMapper.findMetadataById(richTextImage.getImageId()));
+        assertNull(imageMapper.findMetadataById(unreferencedImage.getImageId()));
+
+        mockMvc.perform(get("/api/images/gc-stats").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.runs").isNumber());
+    }
+
     @WithMockUser(roles = "ADMIN")
     @Test
     void testCreateImage() throws Exception {
@@ -198,6 +539,12 @@ class ImageControllerTests {
                 .andExpect(status().isForbidden());
         mockMvc.perform(delete("/api/images/" + image.getImageId()))
                 .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/images/cache-stats").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/images/optimization-stats").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/images/gc-stats").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isForbidden());
     }
 
     @WithMockUser(roles = "EDITOR")
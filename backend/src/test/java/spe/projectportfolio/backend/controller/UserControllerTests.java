@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.connection.DefaultMessage;
 import org.springframework.http.MediaType;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.test.context.support.WithMockUser;
@@ -18,13 +19,19 @@ import org.springframework.transaction.annotation.Transactional;
 import spe.projectportfolio.backend.BackendApplication;
 import spe.projectportfolio.backend.config.H2TestProfileJPAConfig;
 import spe.projectportfolio.backend.mapper.UserMapper;
+import spe.projectportfolio.backend.pojo.PasswordHashingStats;
 import spe.projectportfolio.backend.pojo.User;
 import spe.projectportfolio.backend.pojo.enums.Role;
+import spe.projectportfolio.backend.service.UserEmailFilter;
+import spe.projectportfolio.backend.service.UserSearchIndex;
+import spe.projectportfolio.backend.service.UserService;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -48,9 +55,64 @@ class UserControllerTests {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserSearchIndex userSearchIndex;
+
+    @Autowired
+    private UserEmailFilter userEmailFilter;
+
     @Value("${app.allowed-email-domains}")
     private List<String> allowedEmailDomains;
 
+    @Test
+    void testCheckEmailExists() throws Exception {
+        // register a user using the service, which adds the email to the filter
+        User user = userService.registerNewUser(new User(null, "email@" + allowedEmailDomains.getFirst(), "first", "last", Role.DEVELOPER, false, false, "P@55w0rd"));
+        checkEmailExists(user.getEmail(), true);
+        checkEmailExists("other@" + allowedEmailDomains.getFirst(), false);
+
+        // a user inserted directly into the database is not in the filter, so it is not found (showing that the
+        // database is not used for emails which are definitely not registered) until the filter is rebuilt
+        userMapper.insert(new User(null, "direct@example.com", "first", "last", Role.SALES, false, false, "password"));
+        checkEmailExists("direct@example.com", false);
+        userEmailFilter.rebuild();
+        checkEmailExists("direct@example.com", true);
+
+        // a user added on another server is found once that server sends its email
+        userMapper.insert(new User(null, "remote@example.com", "first", "last", Role.SALES, false, false, "password"));
+        checkEmailExists("remote@example.com", false);
+        userEmailFilter.onMessage(new DefaultMessage(UserEmailFilter.ADDITION_CHANNEL.getBytes(StandardCharsets.UTF_8), "other-server:remote@example.com".getBytes(StandardCharsets.UTF_8)), null);
+        checkEmailExists("remote@example.com", true);
+
+        // change the email of the user using the service, and make sure only the new email exists (the old email is
+        // still in the filter until the change is committed, so this is checked in the database)
+        userService.updateUser(new User(user.getUserId(), "changed@" + allowedEmailDomains.getFirst(), null, null, null, null, null, null));
+        checkEmailExists("changed@" + allowedEmailDomains.getFirst(), true);
+        checkEmailExists(user.getEmail(), false);
+
+        // removing an email which was never added (e.g. one added on another server which couldn't send it) doesn't
+        // decrement any counters, and every email is checked in the database until the filter is rebuilt, since other
+        // emails may be missing too (removed outside of this test's transaction, so that it is removed immediately)
+        userMapper.insert(new User(null, "missing@example.com", "first", "last", Role.SALES, false, false, "password"));
+        checkEmailExists("missing@example.com", false);
+        Thread removal = new Thread(() -> userEmailFilter.remove("never-added@example.com"));
+        removal.start();
+        removal.join();
+        checkEmailExists("missing@example.com", true);
+        userEmailFilter.rebuild();
+        checkEmailExists("missing@example.com", true);
+        checkEmailExists("never-added@example.com", false);
+    }
+
+    private void checkEmailExists(String email, boolean exists) throws Exception {
+        mockMvc.perform(get("/api/users/exists").param("email", email).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("{\"exists\":" + exists + "}")));
+    }
+
     @Test
     void testGetCurrentUser() throws Exception {
         // insert user into database
@@ -71,6 +133,61 @@ class UserControllerTests {
                 .andExpect(content().string(equalTo("")));
     }
 
+    @Test
+    void testGetCurrentUserCached() throws Exception {
+        // insert user into database, and get it using API so that it is cached
+        User user = new User(null, "email@example.com", "first", "last", Role.DEVELOPER, true, false, "password123");
+        userMapper.insert(user);
+        mockMvc.perform(get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .with(user("email@example.com")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(user))));
+
+        // update the user directly in the database, and make sure the cached user is still returned
+        userMapper.update(new User(user.getUserId(), null, "changed", null, null, null, null, null));
+        mockMvc.perform(get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .with(user("email@example.com")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(user))));
+
+        // update the user using the service, and make sure the updated user is returned
+        User updatedUser = userService.updateUser(new User(user.getUserId(), null, "updated", null, null, null, null, null));
+        assertEquals("updated", updatedUser.getFirstName());
+        mockMvc.perform(get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .with(user("email@example.com")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(updatedUser))));
+
+        // cached users don't keep their password hashes
+        assertNull(userService.getUserByEmail("email@example.com").getPassword());
+
+        // change the email of the user using the service, and make sure it is no longer returned for its old email
+        updatedUser = userService.updateUser(new User(user.getUserId(), "changed@" + allowedEmailDomains.getFirst(), null, null, null, null, null, null));
+        mockMvc.perform(get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .with(user("email@example.com")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("")));
+        mockMvc.perform(get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .with(user("changed@" + allowedEmailDomains.getFirst())))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(updatedUser))));
+
+        // delete the user using API, and make sure it is no longer returned
+        mockMvc.perform(delete("/api/users/" + user.getUserId())
+                        .with(user("admin@example.com").roles("ADMIN")))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .with(user("changed@" + allowedEmailDomains.getFirst())))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("")));
+    }
+
     @Test
     void testUpdateCurrentUser() throws Exception {
         // insert user into database
@@ -155,8 +272,10 @@ class UserControllerTests {
     @WithMockUser(roles = "ADMIN")
     @Test
     void testGetAllUsersByCondition() throws Exception {
-        // create and insert users, and get expected JSON
+        // create and insert users, and get expected JSON (inserted directly into the database, so the search index must
+        // be rebuilt)
         List<User> users1 = createAndInsertThreeUsers(userMapper);
+        userSearchIndex.rebuild();
 
         // test get all users
         mockMvc.perform(get("/api/users").accept(MediaType.APPLICATION_JSON))
@@ -213,6 +332,93 @@ class UserControllerTests {
                 .andExpect(content().string(equalTo("[]")));
     }
 
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testGetAllUsersPaginated() throws Exception {
+        List<User> users = createAndInsertThreeUsers(userMapper);
+
+        // get the first page of users sorted by email in descending order
+        MvcResult result = mockMvc.perform(get("/api/users?sort=EMAIL&order=DESC&limit=2").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(List.of(users.get(2), users.get(1))))))
+                .andReturn();
+        String cursor = result.getResponse().getHeader(CaseStudyController.NEXT_CURSOR_HEADER);
+
+        // get the next (last) page using the cursor
+        result = mockMvc.perform(get("/api/users?sort=EMAIL&order=DESC&limit=2&after=" + cursor).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(List.of(users.get(0))))))
+                .andReturn();
+        assertNull(result.getResponse().getHeader(CaseStudyController.NEXT_CURSOR_HEADER));
+
+        // test invalid limits and cursors, and a cursor for a different sort order
+        mockMvc.perform(get("/api/users?limit=0").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/users?limit=" + (UserController.MAX_PAGE_SIZE + 1)).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/users?limit=2&after=abc").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/users?sort=EMAIL&limit=2&after=" + cursor).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testSearchUsersUsingIndex() throws Exception {
+        // rebuild the index, since it is stale (so the database is searched instead) if an earlier test rolled back a
+        // change to it
+        userSearchIndex.rebuild();
+
+        // register users using the service, which adds them to the search index
+        User user1 = userService.registerNewUser(new User(null, "alice@" + allowedEmailDomains.getFirst(), "Alice", "Smith", Role.DEVELOPER, false, false, "P@55w0rd"));
+        User user2 = userService.registerNewUser(new User(null, "bob@" + allowedEmailDomains.getFirst(), "Bob", "Smithson", Role.SALES, false, false, "P@55w0rd"));
+        user1.setPassword(null);
+        user2.setPassword(null);
+
+        // test substring searches (ignoring case), searches shorter than a trigram, and searches matching nobody
+        mockMvc.perform(get("/api/users?search=MITH").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(List.of(user1, user2)))));
+        mockMvc.perform(get("/api/users?search=thso").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(List.of(user2)))));
+        mockMvc.perform(get("/api/users?search=li").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(List.of(user1)))));
+        mockMvc.perform(get("/api/users?search=cebo").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("[]")));
+
+        // update a user using the service, and make sure only the new name matches
+        User updatedUser1 = userService.updateUser(new User(user1.getUserId(), null, null, "Jones", null, null, null, null));
+        updatedUser1.setPassword(null);
+        mockMvc.perform(get("/api/users?search=smith").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(List.of(user2)))));
+        mockMvc.perform(get("/api/users?search=jon").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(List.of(updatedUser1)))));
+
+        // delete a user using API, and make sure it no longer matches
+        mockMvc.perform(delete("/api/users/" + user2.getUserId()))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/users?search=smith").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("[]")));
+
+        // a user inserted directly into the database (e.g. by another server) is only found once the index is rebuilt
+        User user3 = new User(null, "carol@example.com", "Carol", "Smith", Role.SALES, false, false, "password");
+        userMapper.insert(user3);
+        user3.setPassword(null);
+        mockMvc.perform(get("/api/users?search=carol").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("[]")));
+        userSearchIndex.rebuild();
+        mockMvc.perform(get("/api/users?search=carol").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo(getJson(List.of(user3)))));
+    }
+
     @WithMockUser(roles = "ADMIN")
     @Test
     void testGetUserById() throws Exception {
@@ -515,6 +721,22 @@ class UserControllerTests {
                 .andExpect(status().isBadRequest());
     }
 
+    @WithMockUser(roles = "ADMIN")
+    @Test
+    void testGetPasswordHashingStats() throws Exception {
+        // register a user using the service, which hashes its password on the password hashing threads
+        userService.registerNewUser(new User(null, "email@" + allowedEmailDomains.getFirst(), "first", "last", Role.DEVELOPER, false, false, "P@55w0rd"));
+
+        // get the stats using API, and make sure the password was counted
+        String json = mockMvc.perform(get("/api/users/password-hashing-stats").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        PasswordHashingStats stats = new ObjectMapper().readValue(json, PasswordHashingStats.class);
+        assertTrue(stats.getCompleted() >= 1);
+        assertTrue(stats.getThreads() >= 1);
+        assertEquals(0, stats.getQueueDepth());
+    }
+
     @Test
     void testNotLoggedInAccess() throws Exception {
         // check all API endpoints are unauthorised except the current user endpoint, which should return no user details
@@ -543,6 +765,8 @@ class UserControllerTests {
                 .andExpect(status().isForbidden());
         mockMvc.perform(get("/api/users/1").accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/users/password-hashing-stats").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isForbidden());
         mockMvc.perform(post("/api/users").contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isForbidden());
         mockMvc.perform(put("/api/users").contentType(MediaType.APPLICATION_JSON))
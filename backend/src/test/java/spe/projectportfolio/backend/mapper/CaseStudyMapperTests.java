@@ -4,10 +4,14 @@ import org.junit.jupiter.api.Test;
 import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
 import org.springframework.beans.factory.annotation.Autowired;
 import spe.projectportfolio.backend.pojo.CaseStudy;
+import spe.projectportfolio.backend.pojo.CaseStudyCursor;
+import spe.projectportfolio.backend.pojo.CaseStudySummary;
 import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.enums.CaseStudySort;
 import spe.projectportfolio.backend.pojo.enums.EditStatus;
 import spe.projectportfolio.backend.pojo.enums.ImageType;
 import spe.projectportfolio.backend.pojo.enums.ProjectStatus;
+import spe.projectportfolio.backend.pojo.enums.SortDirection;
 
 import java.util.Arrays;
 import java.util.Date;
@@ -36,9 +40,9 @@ class CaseStudyMapperTests {
         imageMapper.insert(image3);
 
         // create case studies and insert into database
-        CaseStudy caseStudy1 = new CaseStudy(1L, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), "software", "design", new Date(), new Date(), "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
-        CaseStudy caseStudy2 = new CaseStudy(2L, "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), "software", "design", new Date(), new Date(), "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
-        CaseStudy caseStudy3 = new CaseStudy(3L, "title3", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client3", "client3 link", image3.getImageId(), "software", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
+        CaseStudy caseStudy1 = new CaseStudy(1L, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), null, null, null, "software", "design", new Date(), new Date(), "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
+        CaseStudy caseStudy2 = new CaseStudy(2L, "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), null, null, null, "software", "design", new Date(), new Date(), "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
+        CaseStudy caseStudy3 = new CaseStudy(3L, "title3", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client3", "client3 link", image3.getImageId(), null, null, null, "software", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
         caseStudyMapper.insert(caseStudy1);
         caseStudyMapper.insert(caseStudy2);
         caseStudyMapper.insert(caseStudy3);
@@ -74,11 +78,11 @@ class CaseStudyMapperTests {
         imageMapper.insert(image3);
 
         // create case studies and insert into database
-        CaseStudy caseStudy1 = new CaseStudy(1L, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), "software", "design", new Date(), new Date(), "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
-        CaseStudy caseStudy2 = new CaseStudy(2L, "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), "software", "design", new Date(), new Date(), "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
-        CaseStudy caseStudy3 = new CaseStudy(3L, "title3", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client3", "client3 link", image3.getImageId(), "software", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
-        CaseStudy caseStudy4 = new CaseStudy(4L, "title4", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), "other industry", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
-        CaseStudy caseStudy5 = new CaseStudy(5L, "title4", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), "software", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
+        CaseStudy caseStudy1 = new CaseStudy(1L, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), null, null, null, "software", "design", new Date(), new Date(), "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
+        CaseStudy caseStudy2 = new CaseStudy(2L, "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), null, null, null, "software", "design", new Date(), new Date(), "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
+        CaseStudy caseStudy3 = new CaseStudy(3L, "title3", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client3", "client3 link", image3.getImageId(), null, null, null, "software", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
+        CaseStudy caseStudy4 = new CaseStudy(4L, "title4", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), null, null, null, "other industry", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
+        CaseStudy caseStudy5 = new CaseStudy(5L, "title4", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), null, null, null, "software", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
         caseStudyMapper.insert(caseStudy1);
         caseStudyMapper.insert(caseStudy2);
         caseStudyMapper.insert(caseStudy3);
@@ -101,6 +105,95 @@ class CaseStudyMapperTests {
         assertCaseStudyEquals(foundCaseStudies.get(1), caseStudy5);
     }
 
+    @Test
+    void testFindByIds() {
+        // create case studies and insert into database
+        CaseStudy caseStudy1 = new CaseStudy(1L, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", null, null, null, null, "software", "design", new Date(), new Date(), "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
+        CaseStudy caseStudy2 = new CaseStudy(2L, "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", null, null, null, null, "software", "design", new Date(), new Date(), "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
+        CaseStudy caseStudy3 = new CaseStudy(3L, "title3", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client3", "client3 link", null, null, null, null, "software", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
+        caseStudyMapper.insert(caseStudy1);
+        caseStudyMapper.insert(caseStudy2);
+        caseStudyMapper.insert(caseStudy3);
+
+        // find two case studies (should be returned in ID order)
+        List<Long> ids = Arrays.asList(caseStudy3.getCaseStudyId(), caseStudy1.getCaseStudyId());
+        List<CaseStudy> foundCaseStudies = caseStudyMapper.findByIds(ids);
+        assertEquals(foundCaseStudies.size(), 2);
+        assertCaseStudyEquals(foundCaseStudies.get(0), caseStudy1);
+        assertCaseStudyEquals(foundCaseStudies.get(1), caseStudy3);
+    }
+
+    @Test
+    void testFindByConditionPaginated() {
+        // create case studies and insert into database
+        Date date1 = new Date(100000000000L);
+        Date date2 = new Date(200000000000L);
+        CaseStudy caseStudy1 = new CaseStudy(1L, "b title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", null, null, null, null, "software", "design", date2, date1, "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
+        CaseStudy caseStudy2 = new CaseStudy(2L, "a title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", null, null, null, null, "software", "design", date1, null, "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
+        CaseStudy caseStudy3 = new CaseStudy(3L, "b title", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client3", "client3 link", null, null, null, null, "software", "design", null, date2, "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
+        caseStudyMapper.insert(caseStudy1);
+        caseStudyMapper.insert(caseStudy2);
+        caseStudyMapper.insert(caseStudy3);
+
+        // test paginating by title (ties broken by ID)
+        List<CaseStudy> foundCaseStudies = caseStudyMapper.findByCondition(null, null, null, CaseStudySort.TITLE, SortDirection.ASC, null, 2);
+        assertEquals(foundCaseStudies.size(), 2);
+        assertEquals(foundCaseStudies.get(0).getCaseStudyId(), caseStudy2.getCaseStudyId());
+        assertEquals(foundCaseStudies.get(1).getCaseStudyId(), caseStudy1.getCaseStudyId());
+        CaseStudyCursor cursor = CaseStudyCursor.of(foundCaseStudies.get(1), CaseStudySort.TITLE, SortDirection.ASC);
+        foundCaseStudies = caseStudyMapper.findByCondition(null, null, null, CaseStudySort.TITLE, SortDirection.ASC, cursor, 2);
+        assertEquals(foundCaseStudies.size(), 1);
+        assertEquals(foundCaseStudies.get(0).getCaseStudyId(), caseStudy3.getCaseStudyId());
+
+        // test paginating by start date in descending order (null dates last)
+        foundCaseStudies = caseStudyMapper.findByCondition(null, null, null, CaseStudySort.START_DATE, SortDirection.DESC, null, 1);
+        assertEquals(foundCaseStudies.size(), 1);
+        assertEquals(foundCaseStudies.get(0).getCaseStudyId(), caseStudy1.getCaseStudyId());
+        cursor = CaseStudyCursor.of(foundCaseStudies.get(0), CaseStudySort.START_DATE, SortDirection.DESC);
+        foundCaseStudies = caseStudyMapper.findByCondition(null, null, null, CaseStudySort.START_DATE, SortDirection.DESC, cursor, 5);
+        assertEquals(foundCaseStudies.size(), 2);
+        assertEquals(foundCaseStudies.get(0).getCaseStudyId(), caseStudy2.getCaseStudyId());
+        assertEquals(foundCaseStudies.get(1).getCaseStudyId(), caseStudy3.getCaseStudyId());
+
+        // test paginating by end date when only searching for some IDs
+        List<Long> ids = Arrays.asList(caseStudy1.getCaseStudyId(), caseStudy2.getCaseStudyId());
+        foundCaseStudies = caseStudyMapper.findByIds(ids, CaseStudySort.END_DATE, SortDirection.ASC, null, 1);
+        assertEquals(foundCaseStudies.size(), 1);
+        assertEquals(foundCaseStudies.get(0).getCaseStudyId(), caseStudy2.getCaseStudyId());
+        cursor = CaseStudyCursor.of(foundCaseStudies.get(0), CaseStudySort.END_DATE, SortDirection.ASC);
+        foundCaseStudies = caseStudyMapper.findByIds(ids, CaseStudySort.END_DATE, SortDirection.ASC, cursor, 1);
+        assertEquals(foundCaseStudies.size(), 1);
+        assertEquals(foundCaseStudies.get(0).getCaseStudyId(), caseStudy1.getCaseStudyId());
+    }
+
+    @Test
+    void testFindSummaries() {
+        // create case studies and insert into database
+        Date date = new Date();
+        CaseStudy caseStudy1 = new CaseStudy(1L, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", null, null, null, null, "software", "design", date, date, "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
+        CaseStudy caseStudy2 = new CaseStudy(2L, "title2", ProjectStatus.COMPLETED, EditStatus.PUBLISHED, "client2", "client2 link", null, null, null, null, "software2", "design", date, date, "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
+        caseStudyMapper.insert(caseStudy1);
+        caseStudyMapper.insert(caseStudy2);
+
+        // test only summary fields are found by condition
+        List<CaseStudySummary> foundSummaries = caseStudyMapper.findSummariesByCondition(null, null, "software2", CaseStudySort.ID, SortDirection.ASC, null, null);
+        assertEquals(foundSummaries.size(), 1);
+        CaseStudySummary foundSummary = foundSummaries.get(0);
+        assertEquals(foundSummary.getCaseStudyId(), caseStudy2.getCaseStudyId());
+        assertEquals(foundSummary.getTitle(), "title2");
+        assertEquals(foundSummary.getProjectStatus(), ProjectStatus.COMPLETED);
+        assertEquals(foundSummary.getClientName(), "client2");
+        assertEquals(foundSummary.getIndustry(), "software2");
+        assertEquals(foundSummary.getSummary(), "summary2");
+        assertNotNull(foundSummary.getStartDate());
+
+        // test finding summaries by ID
+        List<Long> ids = Arrays.asList(caseStudy1.getCaseStudyId(), caseStudy2.getCaseStudyId());
+        foundSummaries = caseStudyMapper.findSummariesByIds(ids, CaseStudySort.ID, SortDirection.DESC, null, 1);
+        assertEquals(foundSummaries.size(), 1);
+        assertEquals(foundSummaries.get(0).getCaseStudyId(), caseStudy2.getCaseStudyId());
+    }
+
     @Test
     void testUpdate() {
         // create images and insert into database
@@ -111,8 +204,8 @@ class CaseStudyMapperTests {
 
         // create case studies and insert into database
         Date oldDate = new Date();
-        CaseStudy caseStudy1 = new CaseStudy(1L, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), "software1", "design1", oldDate, oldDate, "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used 1", "project learnings 1");
-        CaseStudy caseStudy2 = new CaseStudy(2L, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), "software1", "design1", oldDate, oldDate, "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used 1", "project learnings 1");
+        CaseStudy caseStudy1 = new CaseStudy(1L, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), null, null, null, "software1", "design1", oldDate, oldDate, "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used 1", "project learnings 1");
+        CaseStudy caseStudy2 = new CaseStudy(2L, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), null, null, null, "software1", "design1", oldDate, oldDate, "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used 1", "project learnings 1");
         caseStudyMapper.insert(caseStudy1);
         caseStudyMapper.insert(caseStudy2);
 
@@ -162,8 +255,8 @@ class CaseStudyMapperTests {
         // fetch case studies from database and check if they were updated successfully (caseStudy2 should be unchanged except for one field)
         CaseStudy foundCaseStudy1 = caseStudyMapper.findById(caseStudy1.getCaseStudyId());
         CaseStudy foundCaseStudy2 = caseStudyMapper.findById(caseStudy2.getCaseStudyId());
-        assertCaseStudyEquals(foundCaseStudy1, new CaseStudy(caseStudy1.getCaseStudyId(), "title2", ProjectStatus.COMPLETED, EditStatus.DRAFT, "client2", "client2 link", image2.getImageId(), "software2", "design2", newDate, newDate, "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used 2", "project learnings 2"));
-        assertCaseStudyEquals(foundCaseStudy2, new CaseStudy(caseStudy2.getCaseStudyId(), "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), "software1", "design1", oldDate, oldDate, "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used 1", "project learnings 1"));
+        assertCaseStudyEquals(foundCaseStudy1, new CaseStudy(caseStudy1.getCaseStudyId(), "title2", ProjectStatus.COMPLETED, EditStatus.DRAFT, "client2", "client2 link", image2.getImageId(), null, null, null, "software2", "design2", newDate, newDate, "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used 2", "project learnings 2"));
+        assertCaseStudyEquals(foundCaseStudy2, new CaseStudy(caseStudy2.getCaseStudyId(), "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), null, null, null, "software1", "design1", oldDate, oldDate, "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used 1", "project learnings 1"));
     }
 
     @Test
@@ -177,9 +270,9 @@ class CaseStudyMapperTests {
         imageMapper.insert(image3);
 
         // create case studies and insert into database
-        CaseStudy caseStudy1 = new CaseStudy(1L, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), "software", "design", new Date(), new Date(), "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
-        CaseStudy caseStudy2 = new CaseStudy(2L, "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), "software", "design", new Date(), new Date(), "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
-        CaseStudy caseStudy3 = new CaseStudy(3L, "title3", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client3", "client3 link", image3.getImageId(), "software", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
+        CaseStudy caseStudy1 = new CaseStudy(1L, "title1", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client1", "client1 link", image1.getImageId(), null, null, null, "software", "design", new Date(), new Date(), "summary1", "team members", "links1", "problem1", "solution1", "outcomes1", "tools used", "project learnings");
+        CaseStudy caseStudy2 = new CaseStudy(2L, "title2", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client2", "client2 link", image2.getImageId(), null, null, null, "software", "design", new Date(), new Date(), "summary2", "team members", "links2", "problem2", "solution2", "outcomes2", "tools used", "project learnings");
+        CaseStudy caseStudy3 = new CaseStudy(3L, "title3", ProjectStatus.ACTIVE, EditStatus.PUBLISHED, "client3", "client3 link", image3.getImageId(), null, null, null, "software", "design", new Date(), new Date(), "summary3", "team members", "links3", "problem3", "solution3", "outcomes3", "tools used", "project learnings");
         caseStudyMapper.insert(caseStudy1);
         caseStudyMapper.insert(caseStudy2);
         caseStudyMapper.insert(caseStudy3);
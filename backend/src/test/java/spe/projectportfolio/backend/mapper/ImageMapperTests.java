@@ -1,14 +1,17 @@
 package spe.projectportfolio.backend.mapper;
 
+import org.apache.ibatis.session.SqlSessionFactory;
 import org.junit.jupiter.api.Test;
 import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
 import org.springframework.beans.factory.annotation.Autowired;
 import spe.projectportfolio.backend.mapper.ImageMapper;
 import spe.projectportfolio.backend.pojo.Image;
 import spe.projectportfolio.backend.pojo.enums.ImageType;
+import spe.projectportfolio.backend.service.ImageBatchInserter;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static spe.projectportfolio.backend.PojoAssertions.assertImageEquals;
@@ -18,6 +21,9 @@ class ImageMapperTests {
     @Autowired
     private ImageMapper imageMapper;
 
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
     @Test
     void testInsertFindDelete() {
         // create image and insert into database
@@ -85,4 +91,30 @@ class ImageMapperTests {
         assertEquals(foundImages.size(), 1);
         assertImageEquals(foundImages.get(0), image2);
     }
+
+    @Test
+    void testInsertAllAndReferences() {
+        // insert two images in one batch, and check they are given IDs
+        Image image1 = new Image(null, new byte[]{1,2,3}, ImageType.PNG);
+        Image image2 = new Image(null, new byte[]{4,5,6}, ImageType.JPEG);
+        image1.setHash("hash1");
+        image2.setHash("hash2");
+        new ImageBatchInserter(sqlSessionFactory).insertAll(Arrays.asList(image1, image2));
+        assertNotNull(image1.getImageId());
+        assertNotNull(image2.getImageId());
+        assertImageEquals(imageMapper.findById(image2.getImageId()), image2);
+
+        // test findByHashes
+        List<Image> foundImages = imageMapper.findByHashes(Arrays.asList("hash2", "hash3"));
+        assertEquals(foundImages.size(), 1);
+        assertEquals(foundImages.get(0).getImageId(), image2.getImageId());
+
+        // add two references to image1 and one to image2, then remove three from image1 and one from image2, and check
+        // only image1 has no references left (each image starts with one reference)
+        imageMapper.addReferences(Map.of(image1.getImageId(), 2, image2.getImageId(), 1));
+        imageMapper.removeReferences(Map.of(image1.getImageId(), 3, image2.getImageId(), 1));
+        foundImages = imageMapper.findUnreferencedByIds(Arrays.asList(image1.getImageId(), image2.getImageId()));
+        assertEquals(foundImages.size(), 1);
+        assertEquals(foundImages.get(0).getImageId(), image1.getImageId());
+    }
 }
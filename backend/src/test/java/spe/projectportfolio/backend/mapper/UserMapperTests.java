@@ -8,10 +8,13 @@ import spe.projectportfolio.backend.mapper.UserMapper;
 import spe.projectportfolio.backend.pojo.CaseStudy;
 import spe.projectportfolio.backend.pojo.Image;
 import spe.projectportfolio.backend.pojo.User;
+import spe.projectportfolio.backend.pojo.UserCursor;
 import spe.projectportfolio.backend.pojo.enums.EditStatus;
 import spe.projectportfolio.backend.pojo.enums.ImageType;
 import spe.projectportfolio.backend.pojo.enums.ProjectStatus;
 import spe.projectportfolio.backend.pojo.enums.Role;
+import spe.projectportfolio.backend.pojo.enums.SortDirection;
+import spe.projectportfolio.backend.pojo.enums.UserSort;
 
 import java.util.Arrays;
 import java.util.Date;
@@ -75,6 +78,9 @@ class UserMapperTests {
         userMapper.insert(user4);
         userMapper.insert(user5);
 
+        // passwords are not returned when finding by condition
+        for (User user : List.of(user1, user2, user3, user4, user5)) user.setPassword(null);
+
         // test finding by search term "email" (should return all users)
         List<User> foundUsers = userMapper.findByCondition("email", null, null, null, null, null, null);
         assertEquals(foundUsers.size(), 5);
@@ -130,6 +136,18 @@ class UserMapperTests {
         foundUsers = userMapper.findByCondition("1", null, null, null, null, true, null);
         assertEquals(foundUsers.size(), 1);
         assertUserEquals(foundUsers.get(0), user1);
+
+        // test sorting by first name in descending order (ties broken by ID), and getting the page after a cursor
+        foundUsers = userMapper.findByCondition(null, null, null, null, null, null, null, null, UserSort.FIRST_NAME, SortDirection.DESC, null, 3);
+        assertEquals(foundUsers.size(), 3);
+        assertUserEquals(foundUsers.get(0), user5);
+        assertUserEquals(foundUsers.get(1), user3);
+        assertUserEquals(foundUsers.get(2), user4);
+        UserCursor cursor = UserCursor.of(foundUsers.get(2), UserSort.FIRST_NAME, SortDirection.DESC);
+        foundUsers = userMapper.findByCondition(null, null, null, null, null, null, null, null, UserSort.FIRST_NAME, SortDirection.DESC, cursor, 3);
+        assertEquals(foundUsers.size(), 2);
+        assertUserEquals(foundUsers.get(0), user2);
+        assertUserEquals(foundUsers.get(1), user1);
     }
 
     @Test
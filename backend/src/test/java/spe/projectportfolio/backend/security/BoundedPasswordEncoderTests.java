@@ -0,0 +1,115 @@
+package spe.projectportfolio.backend.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import spe.projectportfolio.backend.pojo.PasswordHashingStats;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedPasswordEncoderTests {
+
+    @Test
+    void testRejectWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(blockingEncoder(release), 1, 0);
+        try {
+            // occupy the only hashing thread, which keeps its permit until the latch is released
+            Thread busy = new Thread(() -> encoder.encode("first"));
+            busy.start();
+            waitFor(() -> encoder.getStats().getActiveThreads() == 1);
+
+            // there is no queue, so another password is rejected straight away
+            assertThrows(PasswordHashingRejectedException.class, () -> encoder.encode("second"));
+            assertThrows(PasswordHashingRejectedException.class, () -> encoder.matches("second", "second"));
+
+            // once the password has been hashed the thread is free again, so passwords are hashed as normal
+            release.countDown();
+            busy.join(5000);
+            assertTrue(encoder.matches("third", "third"));
+
+            PasswordHashingStats stats = encoder.getStats();
+            assertEquals(2, stats.getCompleted());
+            assertEquals(2, stats.getRejected());
+            assertEquals(0, stats.getQueueDepth());
+        } finally {
+            release.countDown();
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void testQueueWhenThreadsBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(blockingEncoder(release), 1, 1);
+        try {
+            // occupy the only hashing thread, then fill the queue
+            Thread busy = new Thread(() -> encoder.encode("first"));
+            busy.start();
+            waitFor(() -> encoder.getStats().getActiveThreads() == 1);
+            Thread queued = new Thread(() -> encoder.encode("second"));
+            queued.start();
+            waitFor(() -> encoder.getStats().getQueueDepth() == 1);
+
+            // the queue is full, so another password is rejected
+            assertThrows(PasswordHashingRejectedException.class, () -> encoder.encode("third"));
+
+            // the queued password is hashed once the thread is free
+            release.countDown();
+            busy.join(5000);
+            queued.join(5000);
+            PasswordHashingStats stats = encoder.getStats();
+            assertEquals(2, stats.getCompleted());
+            assertEquals(1, stats.getRejected());
+        } finally {
+            release.countDown();
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void testDelegateExceptionsRethrown() {
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(NoOpPasswordEncoder.getInstance(), 1, 1);
+        try {
+            // errors from the delegate are thrown as they are, rather than wrapped
+            assertThrows(NullPointerException.class, () -> encoder.encode(null));
+            assertEquals(0, encoder.getStats().getRejected());
+        } finally {
+            encoder.shutdown();
+        }
+    }
+
+    // encoder which blocks until the latch is released, so that the hashing threads stay busy
+    private static PasswordEncoder blockingEncoder(CountDownLatch release) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return rawPassword.toString().equals(encodedPassword);
+            }
+        };
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(1);
+        }
+    }
+}
@@ -17,8 +17,10 @@ import spe.projectportfolio.backend.config.H2TestProfileJPAConfig;
 import spe.projectportfolio.backend.mapper.UserMapper;
 import spe.projectportfolio.backend.pojo.User;
 import spe.projectportfolio.backend.pojo.enums.Role;
+import spe.projectportfolio.backend.service.UserService;
 
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -36,6 +38,9 @@ class CustomUserDetailsServiceTests {
     @Autowired
     private CustomUserDetailsService service;
 
+    @Autowired
+    private UserService userService;
+
     @Test
     void testLoadUserByUsername() {
         // create users and insert them into database
@@ -74,6 +79,21 @@ class CustomUserDetailsServiceTests {
         assertTrue(failed);
     }
 
+    @Test
+    void testLoadUserByUsernameNotCached() {
+        // insert user into database, and get it using the user service so that it is cached
+        User user = new User(null, "email@example.com", "first", "last", Role.SALES, false, false, "password");
+        userMapper.insert(user);
+        userService.getUserByEmail(user.getEmail());
+
+        // change the user directly in the database (as another server would), and make sure logging in uses the new
+        // password and permissions
+        userMapper.update(new User(user.getUserId(), null, null, null, null, null, true, "changed"));
+        UserDetails details = service.loadUserByUsername(user.getEmail());
+        assertEquals("changed", details.getPassword());
+        assertEquals(Set.of(new SimpleGrantedAuthority("ROLE_ADMIN")), Set.copyOf(details.getAuthorities()));
+    }
+
     private void assertUserDetailsEquals(UserDetails details1, UserDetails details2) {
         assertEquals(details1.getUsername(), details2.getUsername());
         assertEquals(details1.getPassword(), details2.getPassword());
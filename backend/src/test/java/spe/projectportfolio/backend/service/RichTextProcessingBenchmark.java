@@ -0,0 +1,177 @@
+package spe.projectportfolio.backend.service;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.safety.Safelist;
+import org.springframework.context.ApplicationEventPublisher;
+import spe.projectportfolio.backend.mapper.CaseStudyMapper;
+import spe.projectportfolio.backend.mapper.ImageMapper;
+import spe.projectportfolio.backend.mapper.ImageVariantMapper;
+import spe.projectportfolio.backend.pojo.CaseStudy;
+import spe.projectportfolio.backend.pojo.CaseStudyUpload;
+import spe.projectportfolio.backend.pojo.Image;
+import spe.projectportfolio.backend.pojo.enums.ImageStorageType;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+// compares the CPU time and memory allocated per case study update between the rich text processing in
+// CaseStudyService and the previous processing (where each field was parsed up to four times), which is copied below
+//
+// it is not run with the tests, run it with:
+// mvn test-compile exec:java -Dexec.mainClass=spe.projectportfolio.backend.service.RichTextProcessingBenchmark -Dexec.classpathScope=test
+public class RichTextProcessingBenchmark {
+    private static final int WARMUP_ITERATIONS = 5_000;
+    private static final int ITERATIONS = 20_000;
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final AtomicLong nextImageId = new AtomicLong(1000);
+
+    // the database is mocked (without recording calls) so that only the rich text processing is measured
+    private final ImageMapper imageMapper = mock(ImageMapper.class, withSettings().stubOnly());
+    private final ImageBatchInserter imageBatchInserter = mock(ImageBatchInserter.class, withSettings().stubOnly());
+    private final CaseStudyMapper caseStudyMapper = mock(CaseStudyMapper.class, withSettings().stubOnly());
+    private final CaseStudyService caseStudyService = new CaseStudyService(caseStudyMapper, new ImageService(imageMapper, imageBatchInserter, new DatabaseImageStorage(imageMapper), mock(FileSystemImageStorage.class, withSettings().stubOnly()), ImageStorageType.DATABASE, mock(ImageCache.class, withSettings().stubOnly()), mock(ImageVariantMapper.class, withSettings().stubOnly()), mock(ApplicationEventPublisher.class, withSettings().stubOnly()), 16, 40_000_000), mock(CaseStudySearchIndex.class, withSettings().stubOnly()), mock(CaseStudyCache.class, withSettings().stubOnly()));
+    private final String url = "http://localhost:8080";
+
+    public static void main(String[] args) {
+        new RichTextProcessingBenchmark().run();
+    }
+
+    private void run() {
+        // give inserted images an ID like the database would
+        doAnswer(invocation -> {
+            invocation.<Image>getArgument(0).setImageId(nextImageId.getAndIncrement());
+            return null;
+        }).when(imageMapper).insert(any());
+        doAnswer(invocation -> {
+            invocation.<Collection<Image>>getArgument(0).forEach(image -> image.setImageId(nextImageId.getAndIncrement()));
+            return null;
+        }).when(imageBatchInserter).insertAll(any());
+
+        // current case study, with one stored image in each rich text field
+        String storedField = "<p>Some text about the project, with <strong>bold</strong> and <em>italic</em> text.</p>\n<p><img src=\"/api/images/1\"></p>\n<ul>\n <li>first point</li>\n <li>second point</li>\n</ul>";
+        CaseStudy currentCaseStudy = new CaseStudy(1L, "title", null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, storedField, storedField, storedField, storedField, storedField);
+        when(caseStudyMapper.findById(1L)).thenReturn(currentCaseStudy);
+
+        // updated rich text fields, each keeping the existing image and adding a new one
+        String base64Image = "data:image/png;base64," + Base64.getEncoder().encodeToString(new byte[256]);
+        String updatedField = "<p>Some text about the project, with <strong>bold</strong> and <em>italic</em> text.</p><p><img src=\"" + url + "/api/images/1\"></p><p><img src=\"" + base64Image + "\"></p><ul><li>first point</li><li>second point</li></ul><script>alert(1)</script>";
+
+        Runnable current = () -> caseStudyService.updateCaseStudy(createUpdate(updatedField), new CaseStudyUploadImages());
+        Runnable previous = () -> {
+            CaseStudyUpload data = createUpdate(updatedField);
+            sanitiseRichTextFields(data);
+            updateImagesInRichTextFields(data, currentCaseStudy);
+            convertRichTextFieldImageIds(getCaseStudy(data));
+        };
+
+        measure("previous", previous);
+        measure("current", current);
+    }
+
+    private static CaseStudyUpload createUpdate(String field) {
+        return new CaseStudyUpload(1L, null, null, null, null, null, null, null, null, null, null, null, null, null, field, field, field, field, field);
+    }
+
+    private static void measure(String name, Runnable save) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) save.run();
+
+        long threadId = Thread.currentThread().getId();
+        long startCpuTime = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+        long startAllocatedBytes = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) save.run();
+        long cpuTime = THREAD_MX_BEAN.getCurrentThreadCpuTime() - startCpuTime;
+        long allocatedBytes = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - startAllocatedBytes;
+
+        System.out.printf("%-8s %8.1f us CPU/save %10.1f KB allocated/save%n", name, cpuTime / 1000.0 / ITERATIONS, allocatedBytes / 1024.0 / ITERATIONS);
+    }
+
+    private static CaseStudy getCaseStudy(CaseStudyUpload data) {
+        return CaseStudyService.getCaseStudyFromUploadData(data, null);
+    }
+
+    // the previous rich text processing, which sanitised each field, then scanned the current fields for image IDs,
+    // then rewrote the images in each field, then converted image IDs to links when reading the case study back
+
+    private static void sanitiseRichTextFields(CaseStudyUpload data) {
+        List<String> richTextFields = Arrays.asList(data.getProblemDescription(), data.getSolutionDescription(), data.getOutcomes(), data.getToolsUsed(), data.getProjectLearnings());
+        List<String> newRichTextFields = new ArrayList<>();
+        for (String field : richTextFields) {
+            newRichTextFields.add(Jsoup.clean(field, Safelist.basic().addTags("img").addAttributes("img", "src")));
+        }
+        setRichTextFields(data, newRichTextFields);
+    }
+
+    private void updateImagesInRichTextFields(CaseStudyUpload data, CaseStudy currentData) {
+        List<String> richTextFields = Arrays.asList(currentData.getProblemDescription(), currentData.getSolutionDescription(), currentData.getOutcomes(), currentData.getToolsUsed(), currentData.getProjectLearnings());
+        List<Long> currentImageIDs = new ArrayList<>();
+        for (String field : richTextFields) {
+            for (Element imageElement : Jsoup.parse(field).select("img")) {
+                currentImageIDs.add(CaseStudyService.getStoredImageId(imageElement.attr("src")));
+            }
+        }
+
+        richTextFields = Arrays.asList(data.getProblemDescription(), data.getSolutionDescription(), data.getOutcomes(), data.getToolsUsed(), data.getProjectLearnings());
+        List<String> newRichTextFields = new ArrayList<>();
+        for (String field : richTextFields) {
+            Document document = Jsoup.parse(field);
+            for (Element imageElement : document.select("img")) {
+                String src = imageElement.attr("src");
+                boolean isBase64 = !src.matches("^https?://.+/api/images/\\d+$");
+                Element newImageElement = new Element("img");
+                if (isBase64) {
+                    Image image = CaseStudyService.getImageFromBase64(src);
+                    imageMapper.insert(image);
+                    newImageElement.attr("src", image.getImageId().toString());
+                } else {
+                    String[] tokens = src.split("/");
+                    Long imgId = Long.parseLong(tokens[tokens.length - 1]);
+                    currentImageIDs.removeIf(id -> id.equals(imgId));
+                    newImageElement.attr("src", imgId.toString());
+                }
+                imageElement.replaceWith(newImageElement);
+            }
+            newRichTextFields.add(document.select("body").html());
+        }
+        setRichTextFields(data, newRichTextFields);
+        currentImageIDs.forEach(imageMapper::delete);
+    }
+
+    private void convertRichTextFieldImageIds(CaseStudy caseStudy) {
+        List<String> richTextFields = Arrays.asList(caseStudy.getProblemDescription(), caseStudy.getSolutionDescription(), caseStudy.getOutcomes(), caseStudy.getToolsUsed(), caseStudy.getProjectLearnings());
+        List<String> newRichTextFields = new ArrayList<>();
+        for (String field : richTextFields) {
+            Document document = Jsoup.parse(field);
+            for (Element imageElement : document.select("img")) {
+                Element newImageElement = new Element("img");
+                newImageElement.attr("src", url + "/api/images/" + imageElement.attr("src"));
+                imageElement.replaceWith(newImageElement);
+            }
+            newRichTextFields.add(document.select("body").html());
+        }
+        caseStudy.setProblemDescription(newRichTextFields.get(0));
+        caseStudy.setSolutionDescription(newRichTextFields.get(1));
+        caseStudy.setOutcomes(newRichTextFields.get(2));
+        caseStudy.setToolsUsed(newRichTextFields.get(3));
+        caseStudy.setProjectLearnings(newRichTextFields.get(4));
+    }
+
+    private static void setRichTextFields(CaseStudyUpload data, List<String> richTextFields) {
+        data.setProblemDescription(richTextFields.get(0));
+        data.setSolutionDescription(richTextFields.get(1));
+        data.setOutcomes(richTextFields.get(2));
+        data.setToolsUsed(richTextFields.get(3));
+        data.setProjectLearnings(richTextFields.get(4));
+    }
+}
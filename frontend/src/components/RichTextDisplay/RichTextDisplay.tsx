@@ -1,5 +1,7 @@
 import * as React from 'react';
 import './RichTextDisplay.css';
+// @ts-ignore
+import { resolveImageLinks } from '../../utils/RichTextUtils.js';
 
 interface RichTextDisplayProps {
     content: string;
@@ -7,7 +9,7 @@ interface RichTextDisplayProps {
 
 function RichTextDisplay(props: RichTextDisplayProps) {
     return (
-        <div className='rich-text-display' dangerouslySetInnerHTML={{__html: props.content}}></div>
+        <div className='rich-text-display' dangerouslySetInnerHTML={{__html: resolveImageLinks(props.content)}}></div>
     );
 }
 
@@ -6,6 +6,10 @@ interface CaseStudy {
     clientName?: string;
     clientLink?: string;
     clientLogoId?: number;
+    clientLogoHash?: string; // only in the list of case studies
+    clientLogoWidth?: number; // the dimensions and placeholder of the client logo are only returned, never sent
+    clientLogoHeight?: number;
+    clientLogoPlaceholder?: string;
     industry?: string;
     projectType?: string;
     startDate?: Date;
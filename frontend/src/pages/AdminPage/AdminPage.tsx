@@ -41,6 +41,7 @@ import { useNavigate, useOutletContext } from 'react-router-dom';
 
 import { ALLOWED_EMAIL_DOMAINS, hasAllowedEmailDomain, isValidEmailFormat } from '../../utils/EmailUtils.js';
 import { isValidPassword } from '../../utils/PasswordUtils.js';
+import { fetchUserPage } from '../../utils/UserPageUtils.js';
 import config from '../../config.js';
 import User from "../../interfaces/User.js";
 
@@ -62,20 +63,20 @@ export default function AdminPage() {
 
     const [rows, setRows] = useState<User[]>([]);
 
+    // query for the next page of users (null if every user matching the filters has been fetched)
+    const [nextPageQuery, setNextPageQuery] = useState<URLSearchParams | null>(null);
+
     useEffect(() => {
-        fetch(`${API_URL}/api/users`, {
-            method: 'GET',
-            credentials: 'include'
-        })
-        .then(response => response.json())
-        .then((data: User[]) => {
+        fetchUserPage(new URLSearchParams())
+        .then(({users, nextQuery}) => {
             // remove current user from list of users
-            data = data.filter((user: User) => user.userId !== currentUser.userId);
+            users = users.filter((user: User) => user.userId !== currentUser.userId);
             // set remaining list of users as the rows
-            setRows(data);
+            setRows(users);
+            setNextPageQuery(nextQuery);
         })
         .catch(error => console.error('Error fetching data:', error));
-    }, [API_URL, currentUser]);
+    }, [currentUser]);
 
     const [page, setPage] = useState(0);
     const [rowsPerPage, setRowsPerPage] = useState(10);
@@ -116,16 +117,25 @@ export default function AdminPage() {
     const [numActiveFilters, setNumActiveFilters] = useState(0);
 
     const fillTableWithAllUsers = () => {
-        fetch(`${API_URL}/api/users`, {
-            method: 'GET',
-            credentials: 'include'
-        })
-        .then(response => response.json())
-        .then((data: User[]) => {
+        fetchUserPage(new URLSearchParams())
+        .then(({users, nextQuery}) => {
             // remove current user from list of users
-            data = data.filter((user: User) => user.userId !== currentUser.userId);
+            users = users.filter((user: User) => user.userId !== currentUser.userId);
             // set remaining list of users as the rows
-            setRows(data);
+            setRows(users);
+            setNextPageQuery(nextQuery);
+        })
+        .catch(error => console.error('Error fetching data:', error));
+    }
+
+    // add the next page of users matching the filters to the table
+    const loadMoreUsers = () => {
+        if (!nextPageQuery) return;
+        fetchUserPage(nextPageQuery)
+        .then(({users, nextQuery}) => {
+            users = users.filter((user: User) => user.userId !== currentUser.userId);
+            setRows(rows => [...rows, ...users]);
+            setNextPageQuery(nextQuery);
         })
         .catch(error => console.error('Error fetching data:', error));
     }
@@ -452,6 +462,7 @@ export default function AdminPage() {
                         <Grid item xs={12} md={4}>
                             <FilterSidebar
                                 setRows={setRows}
+                                setNextPageQuery={setNextPageQuery}
                                 currentUser={currentUser}
                                 searchText={searchText}
                                 role={role}
@@ -528,6 +539,12 @@ export default function AdminPage() {
                                     onPageChange={handleChangePage}
                                     onRowsPerPageChange={handleChangeRowsPerPage}
                                 />
+                                {nextPageQuery &&
+                                <Box sx={{display: 'flex', justifyContent: 'center', pb: 2}}>
+                                    <Button variant="outlined" onClick={loadMoreUsers}>
+                                        Load more users
+                                    </Button>
+                                </Box>}
                             </Paper>
 
                             {/*// Buttons----------------------------------------------------------------------*/}
@@ -12,13 +12,13 @@ import {
 } from '@mui/material';
 import SearchIcon from '@mui/icons-material/Search';
 
-// @ts-ignore
-import config from '../../config.js';
 import User from '../../interfaces/User.js';
+import { fetchUserPage } from '../../utils/UserPageUtils.js';
 
 interface FilterSidebarProps {
     currentUser: { userId: any; };
     setRows: (arg0: any) => void;
+    setNextPageQuery: (arg0: any) => void;
     searchText: string;
     role: string;
     editPermission: string;
@@ -36,8 +36,6 @@ interface FilterSidebarProps {
 }
 
 const FilterSidebar = (props: FilterSidebarProps) => {
-    const { API_URL } = config;
-
     const handleKeyPress = (event) => {
         if (event.key === 'Enter') {
             search();
@@ -94,17 +92,14 @@ const FilterSidebar = (props: FilterSidebarProps) => {
         if (props.editPermission) queryParams.append("edit-permission", props.editPermission);
         if (props.admin) queryParams.append("admin", props.admin);
 
-        // fetch using query parameters
-        fetch(`${API_URL}/api/users?${queryParams.toString()}`, {
-            method: 'GET',
-            credentials: 'include'
-        })
-        .then(response => response.json())
-        .then((data: User[]) => {
+        // fetch the first page using query parameters
+        fetchUserPage(queryParams)
+        .then(({users, nextQuery}) => {
             // remove current user from list of users
-            data = data.filter((user: User) => user.userId !== props.currentUser.userId);
+            users = users.filter((user: User) => user.userId !== props.currentUser.userId);
             // set remaining list of users as the rows
-            props.setRows(data);
+            props.setRows(users);
+            props.setNextPageQuery(nextQuery);
 
             props.setFilterIsActive(true);
             props.setNumActiveFilters(getNumActiveFilters());
@@ -123,17 +118,14 @@ const FilterSidebar = (props: FilterSidebarProps) => {
         props.setFilterIsActive(false);
         props.setNumActiveFilters(0);
 
-        // fetch all users
-        fetch(`${API_URL}/api/users`, {
-            method: 'GET',
-            credentials: 'include'
-        })
-        .then(response => response.json())
-        .then((data: User[]) => {
+        // fetch the first page of all users
+        fetchUserPage(new URLSearchParams())
+        .then(({users, nextQuery}) => {
             // remove current user from list of users
-            data = data.filter((user: User) => user.userId !== props.currentUser.userId);
+            users = users.filter((user: User) => user.userId !== props.currentUser.userId);
             // set remaining list of users as the rows
-            props.setRows(data);
+            props.setRows(users);
+            props.setNextPageQuery(nextQuery);
         })
         .catch(error => console.error('Error fetching data:', error));
     }
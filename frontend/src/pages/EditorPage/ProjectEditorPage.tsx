@@ -23,6 +23,8 @@ import theme from '../../components/theme.tsx';
 // @ts-ignore
 import config from '../../config.js';
 import CaseStudy from '../../interfaces/CaseStudy.js';
+// @ts-ignore
+import { resolveImageLinks } from '../../utils/RichTextUtils.js';
 
 // @ts-ignore
 import RichTextField from '../../components/RichTextField/RichTextField.tsx';
@@ -213,11 +215,11 @@ function ProjectEditorPage() {
             setSummary(caseStudy.summary || '');
             setTeamMembers(caseStudy.teamMembers || '');
             setAdvanceLink(caseStudy.advanceLink || '');
-            setProblemDescription(caseStudy.problemDescription || '');
-            setSolutionDescription(caseStudy.solutionDescription || '');
-            setOutcomes(caseStudy.outcomes || '');
-            setToolsUsed(caseStudy.toolsUsed || '');
-            setProjectLearnings(caseStudy.projectLearnings || '');
+            setProblemDescription(resolveImageLinks(caseStudy.problemDescription || ''));
+            setSolutionDescription(resolveImageLinks(caseStudy.solutionDescription || ''));
+            setOutcomes(resolveImageLinks(caseStudy.outcomes || ''));
+            setToolsUsed(resolveImageLinks(caseStudy.toolsUsed || ''));
+            setProjectLearnings(resolveImageLinks(caseStudy.projectLearnings || ''));
             setStartDate(caseStudy.startDate || null);
             setEndDate(caseStudy.endDate || null);
             setProjectStatus(caseStudy.projectStatus || 'ACTIVE');
@@ -14,7 +14,7 @@ import {ThemeProvider} from '@mui/material/styles';
 // @ts-ignore
 import theme from '../../components/theme.tsx';
 import {Avatar, IconButton, InputAdornment, MenuItem, Select, TextField} from "@mui/material";
-import {useState, useEffect} from "react";
+import {useState, useEffect, useRef} from "react";
 import SearchIcon from "@mui/icons-material/Search";
 import {useNavigate, useOutletContext} from "react-router-dom";
 // @ts-ignore
@@ -23,6 +23,8 @@ import Footer from "../../components/Footer.tsx";
 import config from '../../config.js';
 import User from '../../interfaces/User.js';
 import CaseStudy from '../../interfaces/CaseStudy.js';
+import { placeholderStyle } from '../../utils/ImageUtils.js';
+import { fetchCaseStudyPage } from '../../utils/CaseStudyPageUtils.js';
 
 
 export default function HomePage() {
@@ -32,6 +34,14 @@ export default function HomePage() {
 
     const [caseStudies, setCaseStudies] = useState<CaseStudy[]>([]);
 
+    // query for the next page of case studies (null if every case study matching the search has been fetched)
+    const [nextPageQuery, setNextPageQuery] = useState<URLSearchParams | null>(null);
+
+    // client logo thumbnails as data URIs by image ID, added as each batch of them is fetched (null for logos which
+    // weren't returned, which are fetched on their own instead), and the IDs of every logo which has been requested
+    const [clientLogos, setClientLogos] = useState<Record<number, string | null>>({});
+    const requestedLogoIds = useRef(new Set<number>());
+
     const handleProfileClick = () => {
         navigate('/user');
     };
@@ -47,6 +57,7 @@ export default function HomePage() {
 
     const handleSearch = () => {
         setCaseStudies([]);
+        setNextPageQuery(null);
         const queryParams = new URLSearchParams();
 
 
@@ -57,18 +68,10 @@ export default function HomePage() {
             queryParams.append(filter, searchTerm);
         }
 
-        fetch(`${API_URL}/api/case-studies?${queryParams.toString()}`, {
-            method: 'GET',
-            credentials: 'include'
-        })
-            .then(response => {
-                if (response.ok) {
-                    return response.json();
-                }
-                throw new Error('Network response was not ok.');
-            })
-            .then(data => {
-                setCaseStudies(data);
+        fetchCaseStudyPage(queryParams)
+            .then(({caseStudies, nextQuery}) => {
+                setCaseStudies(caseStudies);
+                setNextPageQuery(nextQuery);
             })
             .catch(error => {
                 console.error('Error fetching case studies:', error);
@@ -76,7 +79,53 @@ export default function HomePage() {
     };
 
     useEffect(() => {
-        fetch(`${API_URL}/api/case-studies`, {
+        fetchCaseStudyPage(new URLSearchParams())
+            .then(({caseStudies, nextQuery}) => {
+                setCaseStudies(caseStudies);
+                setNextPageQuery(nextQuery);
+            })
+            .catch(error => console.error('Error fetching case studies:', error));
+    }, [API_URL]);
+
+    // add the next page of case studies matching the search to the list
+    const loadMoreCaseStudies = () => {
+        if (!nextPageQuery) return;
+        fetchCaseStudyPage(nextPageQuery)
+            .then(({caseStudies, nextQuery}) => {
+                setCaseStudies(current => [...current, ...caseStudies]);
+                setNextPageQuery(nextQuery);
+            })
+            .catch(error => console.error('Error fetching case studies:', error));
+    };
+
+    // fetch the client logos of the case studies together (in batches of at most 100, the most the API allows), rather
+    // than one request per logo, and only once each, and logos which aren't returned are fetched on their own instead
+    //
+    // each logo is shown as soon as its batch has been fetched, and its placeholder is shown until then
+    useEffect(() => {
+        const logoIds = Array.from(new Set(caseStudies.map(caseStudy => caseStudy.clientLogoId).filter((id): id is number => !!id)))
+            .filter(id => !requestedLogoIds.current.has(id));
+        logoIds.forEach(id => requestedLogoIds.current.add(id));
+
+        for (let i = 0; i < logoIds.length; i += 100) {
+            const batch = logoIds.slice(i, i + 100);
+            fetch(`${API_URL}/api/images/batch?ids=${batch.join(',')}&w=160`, {
+                method: 'GET',
+                credentials: 'include'
+            })
+                .then(response => response.ok ? response.json() : {})
+                .catch(() => ({}))
+                .then((logos: Record<number, string>) => setClientLogos(current => {
+                    const updated = {...current};
+                    batch.forEach(id => updated[id] = logos[id] ?? null);
+                    return updated;
+                }));
+        }
+    }, [API_URL, caseStudies]);
+
+    // the list of case studies only contains summaries, so fetch the full case study before opening it
+    const openCaseStudy = (path: string, caseStudyId: number) => {
+        fetch(`${API_URL}/api/case-studies/${caseStudyId}`, {
             method: 'GET',
             credentials: 'include'
         })
@@ -86,9 +135,9 @@ export default function HomePage() {
                 }
                 throw new Error('Network response was not ok.');
             })
-            .then(data => setCaseStudies(data))
-            .catch(error => console.error('Error fetching case studies:', error));
-    }, [API_URL]);
+            .then(data => navigate(path, {state: {caseStudy: data}}))
+            .catch(error => console.error('Error fetching case study:', error));
+    };
 
     const handleAddNewProject = () => {
         navigate('/editor'); // navigate to editor
@@ -243,10 +292,19 @@ export default function HomePage() {
                                                 </Typography>
                                                 {caseStudy.clientLogoId &&
                                                 <Box sx={{ml: '10px'}}>
-                                                    <img
-                                                        src={`${API_URL}/api/images/` + caseStudy.clientLogoId}
-                                                        alt="Client Logo"
-                                                        style={{maxWidth: '80px'}}/>
+                                                    {clientLogos[caseStudy.clientLogoId] === undefined
+                                                        // the logo's batch hasn't been fetched yet, so only its placeholder is shown, in the space the logo will take
+                                                        ? <Box sx={{
+                                                            width: Math.min(80, caseStudy.clientLogoWidth ?? 80) + 'px',
+                                                            aspectRatio: caseStudy.clientLogoWidth && caseStudy.clientLogoHeight ? `${caseStudy.clientLogoWidth} / ${caseStudy.clientLogoHeight}` : '1',
+                                                            ...placeholderStyle(caseStudy.clientLogoPlaceholder)
+                                                        }}/>
+                                                        : <img
+                                                            src={clientLogos[caseStudy.clientLogoId] ?? `${API_URL}/api/images/` + caseStudy.clientLogoId + '?w=160' + (caseStudy.clientLogoHash ? `&v=${caseStudy.clientLogoHash}` : '')}
+                                                            alt="Client Logo"
+                                                            width={caseStudy.clientLogoWidth}
+                                                            height={caseStudy.clientLogoHeight}
+                                                            style={{maxWidth: '80px', height: 'auto', ...placeholderStyle(caseStudy.clientLogoPlaceholder)}}/>}
                                                 </Box>}
                                             </Box>
                                             <Typography variant="body2" sx={{mb: '8px'}}>
@@ -265,14 +323,14 @@ export default function HomePage() {
                                         <CardActions>
                                             <Button
                                                 size="small"
-                                                onClick={() => navigate('/project', {state: {caseStudy: caseStudy}})}
+                                                onClick={() => openCaseStudy('/project', caseStudy.caseStudyId)}
                                             >
                                                 View
                                             </Button>
                                             {currentUser.hasEditPermission &&
                                                 <Button
                                                     size="small"
-                                                    onClick={() => navigate('/project-editor', {state: {caseStudy: caseStudy}})}
+                                                    onClick={() => openCaseStudy('/project-editor', caseStudy.caseStudyId)}
                                                 >
                                                     Edit
                                                 </Button>}
@@ -281,6 +339,12 @@ export default function HomePage() {
                                 </Grid>
                             ))}
                         </Grid>
+                        {nextPageQuery &&
+                        <Box sx={{display: 'flex', justifyContent: 'center', pt: 4}}>
+                            <Button variant="outlined" onClick={loadMoreCaseStudies}>
+                                Load more projects
+                            </Button>
+                        </Box>}
                     </Container>
                 </main>
                 <Footer/>
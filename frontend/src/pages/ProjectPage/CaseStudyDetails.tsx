@@ -6,6 +6,7 @@ import CaseStudy from "../../interfaces/CaseStudy.js";
 import config from '../../config.js';
 // @ts-ignore
 import RichTextDisplay from '../../components/RichTextDisplay/RichTextDisplay.tsx';
+import { placeholderStyle } from '../../utils/ImageUtils.js';
 
 
 interface CaseStudyDetailsProps {
@@ -54,9 +55,11 @@ const CaseStudyDetails: React.FC<CaseStudyDetailsProps> = ({caseStudy}) => {
                 {caseStudy.clientLogoId && <Box my={2}>
                     <Box my={2} sx={{maxHeight: '100px', overflow: 'hidden'}}>
                         <img
-                            src={`${API_URL}/api/images/` + caseStudy.clientLogoId}
+                            src={`${API_URL}/api/images/` + caseStudy.clientLogoId + '?h=200'}
                             alt="Client Logo"
-                            style={{maxHeight: '100px', minHeight: '100px', width: 'auto'}}/>
+                            width={caseStudy.clientLogoWidth}
+                            height={caseStudy.clientLogoHeight}
+                            style={{maxHeight: '100px', minHeight: '100px', width: 'auto', ...placeholderStyle(caseStudy.clientLogoPlaceholder)}}/>
                     </Box>
                 </Box>}
 
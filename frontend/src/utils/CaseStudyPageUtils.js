@@ -0,0 +1,28 @@
+import config from '../config.js';
+
+const { API_URL } = config;
+
+// number of case studies fetched at once for the home page (the API allows at most 100)
+export const CASE_STUDY_PAGE_SIZE = 24;
+
+// fetch a page of case study summaries matching the query (URLSearchParams), returning the case studies and the query
+// for the next page (null if this is the last page), which includes the cursor of the page from the X-Next-Cursor
+// header
+export const fetchCaseStudyPage = (query) => {
+    const pageQuery = new URLSearchParams(query);
+    pageQuery.set('limit', CASE_STUDY_PAGE_SIZE.toString());
+    return fetch(`${API_URL}/api/case-studies?${pageQuery.toString()}`, {
+        method: 'GET',
+        credentials: 'include'
+    })
+    .then(response => {
+        if (!response.ok) throw new Error('Network response was not ok.');
+        const nextCursor = response.headers.get('X-Next-Cursor');
+        let nextQuery = null;
+        if (nextCursor) {
+            nextQuery = new URLSearchParams(query);
+            nextQuery.set('after', nextCursor);
+        }
+        return response.json().then(caseStudies => ({caseStudies, nextQuery}));
+    });
+}
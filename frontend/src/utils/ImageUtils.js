@@ -0,0 +1,6 @@
+// show the placeholder of an image (a tiny data URI version of it, returned by the API) as its background while the
+// image loads
+export const placeholderStyle = (placeholder) => {
+    if (!placeholder) return {};
+    return {backgroundImage: `url(${placeholder})`, backgroundSize: 'cover', backgroundRepeat: 'no-repeat'};
+}
@@ -0,0 +1,8 @@
+import config from '../config.js';
+
+const { API_URL } = config;
+
+// image links in rich text fields are relative to the API, so the API URL must be added before they are displayed
+export const resolveImageLinks = (html) => {
+    return html.replaceAll('<img src="/api/images/', `<img src="${API_URL}/api/images/`);
+}
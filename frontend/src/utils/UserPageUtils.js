@@ -0,0 +1,26 @@
+import config from '../config.js';
+
+const { API_URL } = config;
+
+// number of users fetched at once for the admin page
+export const USER_PAGE_SIZE = 100;
+
+// fetch a page of users matching the query (URLSearchParams), returning the users and the query for the next page
+// (null if this is the last page), which includes the cursor of the page from the X-Next-Cursor header
+export const fetchUserPage = (query) => {
+    const pageQuery = new URLSearchParams(query);
+    pageQuery.set('limit', USER_PAGE_SIZE.toString());
+    return fetch(`${API_URL}/api/users?${pageQuery.toString()}`, {
+        method: 'GET',
+        credentials: 'include'
+    })
+    .then(response => {
+        const nextCursor = response.headers.get('X-Next-Cursor');
+        let nextQuery = null;
+        if (nextCursor) {
+            nextQuery = new URLSearchParams(query);
+            nextQuery.set('after', nextCursor);
+        }
+        return response.json().then(users => ({users, nextQuery}));
+    });
+}